@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.PluginResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.net.wifi.WifiConfiguration;
+
+/**
+ * addNetwork through execute for each auth type, adding a network that is
+ * not configured yet next to ten that are. The network is removed again
+ * before every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddNetworkBenchmark {
+
+	private static final String SSID = "\"benchmark\"";
+
+	@Param({ "WPA", "WEP", "NONE" })
+	String auth;
+
+	private PluginHarness harness;
+	private String password;
+
+	@Setup
+	public void setUp() throws Exception {
+		harness = new PluginHarness();
+		for (int i = 0; i < 10; i++) {
+			WifiConfiguration network = new WifiConfiguration();
+			network.SSID = "\"network-" + i + "\"";
+			harness.wifiManager.addNetwork(network);
+		}
+		password = auth.equals("WPA") ? "\"correct horse\"" : auth.equals("WEP") ? "0123456789" : "";
+	}
+
+	@Setup(Level.Invocation)
+	public void removeNetwork() throws Exception {
+		PluginResult result = harness.call("removeNetwork", SSID);
+		if (result.getStatus() != PluginResult.Status.OK.ordinal()
+				&& !result.getStrMessage().equals("Network not found.")) {
+			throw new IllegalStateException(result.getMessage());
+		}
+		harness.activity.idle();
+	}
+
+	@TearDown
+	public void tearDown() {
+		harness.destroy();
+	}
+
+	@Benchmark
+	public PluginResult addNetwork() throws Exception {
+		PluginResult result = harness.call("addNetwork", SSID, auth, password);
+		if (result.getStatus() != PluginResult.Status.OK.ordinal()) {
+			throw new IllegalStateException(result.getMessage());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * getScanResults through execute, from the call to its result, for each
+ * result format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetScanResultsBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	int aps;
+
+	@Param({ "json", "columnar", "binary" })
+	String format;
+
+	private PluginHarness harness;
+	private JSONObject options;
+
+	@Setup
+	public void setUp() throws Exception {
+		harness = new PluginHarness();
+		harness.wifiManager.setScanResults(PluginHarness.accessPoints(aps));
+		options = new JSONObject();
+		if (!format.equals("json")) {
+			options.put("format", format);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		harness.destroy();
+	}
+
+	@Benchmark
+	public PluginResult getScanResults() throws Exception {
+		return harness.call("getScanResults", options);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+
+import android.app.Activity;
+import android.content.Context;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+
+/**
+ * A WifiWizard on the stand-in activity, called the way the Cordova bridge
+ * calls it. Results are collected per callback id.
+ */
+class PluginHarness implements CordovaWebView, CordovaInterface {
+
+	static final long TIMEOUT = 5000;
+
+	final Activity activity = new Activity();
+	final WifiManager wifiManager = (WifiManager) activity.getSystemService(Context.WIFI_SERVICE);
+	final WifiWizard plugin = new WifiWizard();
+
+	private final ExecutorService threadPool = Executors.newCachedThreadPool();
+	private final Map<String, BlockingQueue<PluginResult>> results = new HashMap<String, BlockingQueue<PluginResult>>();
+	private final AtomicInteger callbackIds = new AtomicInteger();
+
+	PluginHarness() {
+		plugin.initialize(this, this);
+	}
+
+	void destroy() {
+		plugin.onDestroy();
+		threadPool.shutdown();
+	}
+
+	public Activity getActivity() {
+		return activity;
+	}
+
+	public ExecutorService getThreadPool() {
+		return threadPool;
+	}
+
+	public void sendPluginResult(PluginResult result, String callbackId) {
+		queue(callbackId).add(result);
+	}
+
+	/**
+	 * Calls an action.
+	 *
+	 * @return the callback id
+	 */
+	String start(String action, Object... args) throws Exception {
+		String callbackId = "WifiWizard" + callbackIds.incrementAndGet();
+		queue(callbackId);
+		plugin.execute(action, new JSONArray(Arrays.asList(args)), new CallbackContext(callbackId, this));
+		return callbackId;
+	}
+
+	/** Calls an action and waits for its first result */
+	PluginResult call(String action, Object... args) throws Exception {
+		return next(start(action, args));
+	}
+
+	/** Waits for the next result sent to a callback */
+	PluginResult next(String callbackId) throws InterruptedException {
+		PluginResult result = queue(callbackId).poll(TIMEOUT, TimeUnit.MILLISECONDS);
+		if (result == null) {
+			throw new AssertionError("No result for " + callbackId);
+		}
+		return result;
+	}
+
+	/** Returns the next result sent to a callback, or null if there is none yet */
+	PluginResult poll(String callbackId) {
+		return queue(callbackId).poll();
+	}
+
+	private synchronized BlockingQueue<PluginResult> queue(String callbackId) {
+		BlockingQueue<PluginResult> queue = results.get(callbackId);
+		if (queue == null) {
+			queue = new LinkedBlockingQueue<PluginResult>();
+			results.put(callbackId, queue);
+		}
+		return queue;
+	}
+
+	/**
+	 * Returns count access points, spread over count / 4 SSIDs and both bands,
+	 * the same for the same count.
+	 */
+	static List<ScanResult> accessPoints(int count) {
+		List<ScanResult> scan = new ArrayList<ScanResult>(count);
+		for (int i = 0; i < count; i++) {
+			ScanResult ap = new ScanResult("network-" + (i / 4), String.format("02:00:00:%02x:%02x:%02x",
+					(i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff), "[WPA2-PSK-CCMP][ESS]", -40 - (i * 7) % 55,
+					i % 2 == 0 ? 2412 + (i % 13) * 5 : 5180 + (i % 8) * 20);
+			ap.timestamp = i;
+			scan.add(ap);
+		}
+		return scan;
+	}
+}
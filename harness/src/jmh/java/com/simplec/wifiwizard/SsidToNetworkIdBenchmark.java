@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.app.Activity;
+import android.content.Context;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiManager;
+
+/**
+ * The SSID to networkId lookup behind ssidToNetworkId: against the index,
+ * for a configured and an unknown SSID, and right after the index was
+ * dropped, when it is rebuilt from getConfiguredNetworks().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SsidToNetworkIdBenchmark {
+
+	@Param({ "10", "1000" })
+	int networks;
+
+	private ConfiguredNetworks configured;
+	private String last;
+
+	@Setup
+	public void setUp() {
+		WifiManager wifiManager = (WifiManager) new Activity().getSystemService(Context.WIFI_SERVICE);
+		for (int i = 0; i < networks; i++) {
+			WifiConfiguration network = new WifiConfiguration();
+			network.SSID = "\"network-" + i + "\"";
+			wifiManager.addNetwork(network);
+		}
+		configured = new ConfiguredNetworks(wifiManager, new ActionMetrics());
+		last = "\"network-" + (networks - 1) + "\"";
+	}
+
+	@Benchmark
+	public int hit() {
+		return configured.networkId(last);
+	}
+
+	@Benchmark
+	public int miss() {
+		return configured.networkId("\"absent\"");
+	}
+
+	@Benchmark
+	public int cold() {
+		configured.invalidate();
+		return configured.networkId(last);
+	}
+}
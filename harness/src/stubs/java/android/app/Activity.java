@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.wifi.WifiManager;
+
+/**
+ * An in-memory stand-in for the host activity. It owns a fake WifiManager,
+ * keeps preferences in maps and files in a temporary directory, and delivers
+ * broadcasts one at a time on its own main thread, as Android does.
+ */
+public class Activity extends Context {
+
+	private static class Registration {
+		final BroadcastReceiver receiver;
+		final IntentFilter filter;
+
+		Registration(BroadcastReceiver receiver, IntentFilter filter) {
+			this.receiver = receiver;
+			this.filter = filter;
+		}
+	}
+
+	private final ExecutorService main = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "main");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private final List<Registration> receivers = new ArrayList<Registration>();
+	private final Map<String, Preferences> preferences = new HashMap<String, Preferences>();
+	private final WifiManager wifiManager = new WifiManager(this);
+	private File filesDir;
+	private File noBackupFilesDir;
+
+	@Override
+	public Object getSystemService(String name) {
+		return WIFI_SERVICE.equals(name) ? wifiManager : null;
+	}
+
+	@Override
+	public synchronized Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+		receivers.add(new Registration(receiver, filter));
+		return null;
+	}
+
+	@Override
+	public synchronized void unregisterReceiver(BroadcastReceiver receiver) {
+		for (int i = 0; i < receivers.size(); i++) {
+			if (receivers.get(i).receiver == receiver) {
+				receivers.remove(i);
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Receiver not registered: " + receiver);
+	}
+
+	@Override
+	public void sendBroadcast(final Intent intent) {
+		final List<BroadcastReceiver> matching = new ArrayList<BroadcastReceiver>();
+		synchronized (this) {
+			for (Registration registration : receivers) {
+				if (registration.filter.hasAction(intent.getAction())) {
+					matching.add(registration.receiver);
+				}
+			}
+		}
+		main.execute(new Runnable() {
+			public void run() {
+				for (BroadcastReceiver receiver : matching) {
+					receiver.onReceive(Activity.this, intent);
+				}
+			}
+		});
+	}
+
+	/** Waits until every broadcast sent so far has been delivered. */
+	public void idle() throws Exception {
+		Future<?> marker = main.submit(new Runnable() {
+			public void run() {
+			}
+		});
+		marker.get();
+	}
+
+	public synchronized int receiverCount() {
+		return receivers.size();
+	}
+
+	@Override
+	public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+		Preferences prefs = preferences.get(name);
+		if (prefs == null) {
+			prefs = new Preferences();
+			preferences.put(name, prefs);
+		}
+		return prefs;
+	}
+
+	@Override
+	public synchronized File getFilesDir() {
+		if (filesDir == null) {
+			filesDir = createTempDir("files");
+		}
+		return filesDir;
+	}
+
+	@Override
+	public synchronized File getNoBackupFilesDir() {
+		if (noBackupFilesDir == null) {
+			noBackupFilesDir = createTempDir("no_backup");
+		}
+		return noBackupFilesDir;
+	}
+
+	private static File createTempDir(String name) {
+		try {
+			File dir = File.createTempFile("wifiwizard-" + name, "");
+			if (!dir.delete() || !dir.mkdir()) {
+				throw new IOException("Could not create " + dir);
+			}
+			dir.deleteOnExit();
+			return dir;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class Preferences implements SharedPreferences {
+		private final Map<String, String> values = new TreeMap<String, String>();
+
+		public synchronized Map<String, ?> getAll() {
+			return new HashMap<String, String>(values);
+		}
+
+		public synchronized String getString(String key, String defValue) {
+			String value = values.get(key);
+			return value == null ? defValue : value;
+		}
+
+		public synchronized boolean contains(String key) {
+			return values.containsKey(key);
+		}
+
+		public Editor edit() {
+			return new Editor() {
+				private final Map<String, String> puts = new HashMap<String, String>();
+				private final List<String> removes = new ArrayList<String>();
+				private boolean clear;
+
+				public Editor putString(String key, String value) {
+					puts.put(key, value);
+					return this;
+				}
+
+				public Editor remove(String key) {
+					removes.add(key);
+					return this;
+				}
+
+				public Editor clear() {
+					clear = true;
+					return this;
+				}
+
+				public boolean commit() {
+					synchronized (Preferences.this) {
+						if (clear) {
+							values.clear();
+						}
+						for (String key : removes) {
+							values.remove(key);
+						}
+						values.putAll(puts);
+					}
+					return true;
+				}
+
+				public void apply() {
+					commit();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.content;
+
+import java.io.File;
+
+/** Stand-in for the parts of android.content.Context the plugin uses. */
+public abstract class Context {
+
+	public static final String WIFI_SERVICE = "wifi";
+	public static final int MODE_PRIVATE = 0;
+
+	public abstract Object getSystemService(String name);
+
+	public abstract Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter);
+
+	public abstract void unregisterReceiver(BroadcastReceiver receiver);
+
+	public abstract void sendBroadcast(Intent intent);
+
+	public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+	public abstract File getFilesDir();
+
+	public abstract File getNoBackupFilesDir();
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.os.Parcelable;
+
+/** Stand-in for android.content.Intent: an action and its extras. */
+public class Intent {
+
+	private final String action;
+	private final Map<String, Object> extras = new HashMap<String, Object>();
+
+	public Intent(String action) {
+		this.action = action;
+	}
+
+	public String getAction() {
+		return action;
+	}
+
+	public Intent putExtra(String name, int value) {
+		extras.put(name, value);
+		return this;
+	}
+
+	public Intent putExtra(String name, boolean value) {
+		extras.put(name, value);
+		return this;
+	}
+
+	public Intent putExtra(String name, Parcelable value) {
+		extras.put(name, value);
+		return this;
+	}
+
+	public boolean hasExtra(String name) {
+		return extras.containsKey(name);
+	}
+
+	public int getIntExtra(String name, int defaultValue) {
+		Object value = extras.get(name);
+		return value instanceof Integer ? (Integer) value : defaultValue;
+	}
+
+	public boolean getBooleanExtra(String name, boolean defaultValue) {
+		Object value = extras.get(name);
+		return value instanceof Boolean ? (Boolean) value : defaultValue;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T extends Parcelable> T getParcelableExtra(String name) {
+		return (T) extras.get(name);
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.content;
+
+import java.util.Map;
+
+/** Stand-in for android.content.SharedPreferences, string values only. */
+public interface SharedPreferences {
+
+	interface Editor {
+		Editor putString(String key, String value);
+
+		Editor remove(String key);
+
+		Editor clear();
+
+		boolean commit();
+
+		void apply();
+	}
+
+	Map<String, ?> getAll();
+
+	String getString(String key, String defValue);
+
+	boolean contains(String key);
+
+	Editor edit();
+}
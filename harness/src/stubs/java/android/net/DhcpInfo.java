@@ -0,0 +1,27 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.net;
+
+/** Stand-in for android.net.DhcpInfo; addresses are IPv4, little-endian. */
+public class DhcpInfo {
+
+	public int ipAddress;
+	public int gateway;
+	public int netmask;
+	public int dns1;
+	public int dns2;
+	public int serverAddress;
+	public int leaseDuration;
+}
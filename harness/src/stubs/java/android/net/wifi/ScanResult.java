@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.net.wifi;
+
+/** Stand-in for android.net.wifi.ScanResult. */
+public class ScanResult {
+
+	public String SSID;
+	public String BSSID;
+	public String capabilities;
+	public int level;
+	public int frequency;
+	/** Microseconds since boot when the access point was last seen */
+	public long timestamp;
+
+	public ScanResult() {
+	}
+
+	public ScanResult(String ssid, String bssid, String capabilities, int level, int frequency) {
+		this.SSID = ssid;
+		this.BSSID = bssid;
+		this.capabilities = capabilities;
+		this.level = level;
+		this.frequency = frequency;
+	}
+}
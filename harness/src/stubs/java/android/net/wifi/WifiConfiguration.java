@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.net.wifi;
+
+import java.util.BitSet;
+
+/** Stand-in for android.net.wifi.WifiConfiguration. */
+public class WifiConfiguration {
+
+	public static class KeyMgmt {
+		public static final int NONE = 0;
+		public static final int WPA_PSK = 1;
+		public static final int WPA_EAP = 2;
+		public static final int IEEE8021X = 3;
+		public static final String[] strings = { "NONE", "WPA_PSK", "WPA_EAP", "IEEE8021X" };
+	}
+
+	public static class Protocol {
+		public static final int WPA = 0;
+		public static final int RSN = 1;
+		public static final String[] strings = { "WPA", "RSN" };
+	}
+
+	public static class AuthAlgorithm {
+		public static final int OPEN = 0;
+		public static final int SHARED = 1;
+		public static final int LEAP = 2;
+		public static final String[] strings = { "OPEN", "SHARED", "LEAP" };
+	}
+
+	public static class PairwiseCipher {
+		public static final int NONE = 0;
+		public static final int TKIP = 1;
+		public static final int CCMP = 2;
+		public static final String[] strings = { "NONE", "TKIP", "CCMP" };
+	}
+
+	public static class GroupCipher {
+		public static final int WEP40 = 0;
+		public static final int WEP104 = 1;
+		public static final int TKIP = 2;
+		public static final int CCMP = 3;
+		public static final String[] strings = { "WEP40", "WEP104", "TKIP", "CCMP" };
+	}
+
+	public static class Status {
+		public static final int CURRENT = 0;
+		public static final int DISABLED = 1;
+		public static final int ENABLED = 2;
+		public static final String[] strings = { "current", "disabled", "enabled" };
+	}
+
+	public int networkId = -1;
+	public String SSID;
+	public String BSSID;
+	public String preSharedKey;
+	public String[] wepKeys = new String[4];
+	public int wepTxKeyIndex;
+	public int priority;
+	public boolean hiddenSSID;
+	public int status;
+	public BitSet allowedKeyManagement = new BitSet();
+	public BitSet allowedProtocols = new BitSet();
+	public BitSet allowedAuthAlgorithms = new BitSet();
+	public BitSet allowedPairwiseCiphers = new BitSet();
+	public BitSet allowedGroupCiphers = new BitSet();
+
+	public WifiConfiguration() {
+	}
+
+	/** A copy, as the system hands out; the real class has a hidden one */
+	public WifiConfiguration(WifiConfiguration source) {
+		networkId = source.networkId;
+		SSID = source.SSID;
+		BSSID = source.BSSID;
+		// like the real system, never hand passwords back
+		wepKeys = new String[4];
+		wepTxKeyIndex = source.wepTxKeyIndex;
+		priority = source.priority;
+		hiddenSSID = source.hiddenSSID;
+		status = source.status;
+		allowedKeyManagement = (BitSet) source.allowedKeyManagement.clone();
+		allowedProtocols = (BitSet) source.allowedProtocols.clone();
+		allowedAuthAlgorithms = (BitSet) source.allowedAuthAlgorithms.clone();
+		allowedPairwiseCiphers = (BitSet) source.allowedPairwiseCiphers.clone();
+		allowedGroupCiphers = (BitSet) source.allowedGroupCiphers.clone();
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.net.wifi;
+
+/**
+ * Stand-in for android.net.wifi.WifiInfo. The setters are for tests; the
+ * real class has no public ones.
+ */
+public class WifiInfo {
+
+	private String ssid = "<unknown ssid>";
+	private String bssid;
+	private int rssi = -127;
+	private int networkId = -1;
+	private int linkSpeed = -1;
+	private int ipAddress;
+	private SupplicantState supplicantState = SupplicantState.DISCONNECTED;
+
+	public String getSSID() {
+		return ssid;
+	}
+
+	public String getBSSID() {
+		return bssid;
+	}
+
+	public int getRssi() {
+		return rssi;
+	}
+
+	public int getNetworkId() {
+		return networkId;
+	}
+
+	public int getLinkSpeed() {
+		return linkSpeed;
+	}
+
+	public int getIpAddress() {
+		return ipAddress;
+	}
+
+	public SupplicantState getSupplicantState() {
+		return supplicantState;
+	}
+
+	public void setSSID(String ssid) {
+		this.ssid = ssid;
+	}
+
+	public void setBSSID(String bssid) {
+		this.bssid = bssid;
+	}
+
+	public void setRssi(int rssi) {
+		this.rssi = rssi;
+	}
+
+	public void setNetworkId(int networkId) {
+		this.networkId = networkId;
+	}
+
+	public void setLinkSpeed(int linkSpeed) {
+		this.linkSpeed = linkSpeed;
+	}
+
+	public void setIpAddress(int ipAddress) {
+		this.ipAddress = ipAddress;
+	}
+
+	public void setSupplicantState(SupplicantState supplicantState) {
+		this.supplicantState = supplicantState;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.net.wifi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.DhcpInfo;
+
+/**
+ * An in-memory stand-in for android.net.wifi.WifiManager.
+ *
+ * Configured networks are kept by networkId and handed out as copies without
+ * their passwords. startScan and changes to the radio or to the configured
+ * networks send the broadcasts the system would, through the context. The
+ * set* methods are for tests and have no counterpart in the real class.
+ */
+public class WifiManager {
+
+	public static final String SCAN_RESULTS_AVAILABLE_ACTION = "android.net.wifi.SCAN_RESULTS";
+	public static final String NETWORK_IDS_CHANGED_ACTION = "android.net.wifi.NETWORK_IDS_CHANGED";
+	public static final String WIFI_STATE_CHANGED_ACTION = "android.net.wifi.WIFI_STATE_CHANGED";
+	public static final String RSSI_CHANGED_ACTION = "android.net.wifi.RSSI_CHANGED";
+	public static final String NETWORK_STATE_CHANGED_ACTION = "android.net.wifi.STATE_CHANGE";
+	public static final String SUPPLICANT_STATE_CHANGED_ACTION = "android.net.wifi.supplicant.STATE_CHANGE";
+	/** Hidden in the real class */
+	public static final String CONFIGURED_NETWORKS_CHANGED_ACTION = "android.net.wifi.CONFIGURED_NETWORKS_CHANGE";
+
+	public static final String EXTRA_WIFI_STATE = "wifi_state";
+	public static final String EXTRA_NEW_RSSI = "newRssi";
+	public static final String EXTRA_NEW_STATE = "newState";
+	public static final String EXTRA_SUPPLICANT_ERROR = "supplicantError";
+	public static final String EXTRA_NETWORK_INFO = "networkInfo";
+
+	public static final int WIFI_STATE_DISABLING = 0;
+	public static final int WIFI_STATE_DISABLED = 1;
+	public static final int WIFI_STATE_ENABLING = 2;
+	public static final int WIFI_STATE_ENABLED = 3;
+	public static final int WIFI_STATE_UNKNOWN = 4;
+
+	public static final int ERROR_AUTHENTICATING = 1;
+
+	private static final int MIN_RSSI = -100;
+	private static final int MAX_RSSI = -55;
+
+	private final Context context;
+	private final Map<Integer, WifiConfiguration> networks = new TreeMap<Integer, WifiConfiguration>();
+	private List<ScanResult> scanResults = new ArrayList<ScanResult>();
+	private WifiInfo connectionInfo = new WifiInfo();
+	private DhcpInfo dhcpInfo = new DhcpInfo();
+	private int state = WIFI_STATE_ENABLED;
+	private int nextNetworkId;
+	private boolean refuseNetworks;
+	private int scans;
+
+	public WifiManager(Context context) {
+		this.context = context;
+	}
+
+	public static int calculateSignalLevel(int rssi, int numLevels) {
+		if (rssi <= MIN_RSSI) {
+			return 0;
+		} else if (rssi >= MAX_RSSI) {
+			return numLevels - 1;
+		}
+		float inputRange = MAX_RSSI - MIN_RSSI;
+		float outputRange = numLevels - 1;
+		return (int) ((float) (rssi - MIN_RSSI) * outputRange / inputRange);
+	}
+
+	public synchronized int getWifiState() {
+		return state;
+	}
+
+	public synchronized boolean isWifiEnabled() {
+		return state == WIFI_STATE_ENABLED;
+	}
+
+	public boolean setWifiEnabled(boolean enabled) {
+		setWifiState(enabled ? WIFI_STATE_ENABLED : WIFI_STATE_DISABLED);
+		return true;
+	}
+
+	/** Returns null while wifi is off, as the real one does */
+	public synchronized List<WifiConfiguration> getConfiguredNetworks() {
+		if (state != WIFI_STATE_ENABLED) {
+			return null;
+		}
+		List<WifiConfiguration> copies = new ArrayList<WifiConfiguration>(networks.size());
+		for (WifiConfiguration network : networks.values()) {
+			copies.add(new WifiConfiguration(network));
+		}
+		return copies;
+	}
+
+	public int addNetwork(WifiConfiguration config) {
+		int id;
+		synchronized (this) {
+			if (state != WIFI_STATE_ENABLED || config.SSID == null || refuseNetworks) {
+				return -1;
+			}
+			id = nextNetworkId++;
+			store(id, config);
+		}
+		context.sendBroadcast(new Intent(CONFIGURED_NETWORKS_CHANGED_ACTION));
+		return id;
+	}
+
+	public int updateNetwork(WifiConfiguration config) {
+		synchronized (this) {
+			if (state != WIFI_STATE_ENABLED || !networks.containsKey(config.networkId)) {
+				return -1;
+			}
+			store(config.networkId, config);
+		}
+		context.sendBroadcast(new Intent(CONFIGURED_NETWORKS_CHANGED_ACTION));
+		return config.networkId;
+	}
+
+	public boolean removeNetwork(int networkId) {
+		synchronized (this) {
+			if (networks.remove(networkId) == null) {
+				return false;
+			}
+		}
+		context.sendBroadcast(new Intent(CONFIGURED_NETWORKS_CHANGED_ACTION));
+		return true;
+	}
+
+	public synchronized boolean enableNetwork(int networkId, boolean disableOthers) {
+		WifiConfiguration network = networks.get(networkId);
+		if (network == null) {
+			return false;
+		}
+		network.status = WifiConfiguration.Status.ENABLED;
+		if (disableOthers) {
+			for (WifiConfiguration other : networks.values()) {
+				if (other != network) {
+					other.status = WifiConfiguration.Status.DISABLED;
+				}
+			}
+		}
+		return true;
+	}
+
+	public synchronized boolean disableNetwork(int networkId) {
+		WifiConfiguration network = networks.get(networkId);
+		if (network == null) {
+			return false;
+		}
+		network.status = WifiConfiguration.Status.DISABLED;
+		return true;
+	}
+
+	public boolean saveConfiguration() {
+		return true;
+	}
+
+	public synchronized boolean disconnect() {
+		connectionInfo = new WifiInfo();
+		return true;
+	}
+
+	public synchronized boolean reconnect() {
+		return true;
+	}
+
+	public boolean startScan() {
+		synchronized (this) {
+			if (state != WIFI_STATE_ENABLED) {
+				return false;
+			}
+			scans++;
+		}
+		context.sendBroadcast(new Intent(SCAN_RESULTS_AVAILABLE_ACTION));
+		return true;
+	}
+
+	public synchronized List<ScanResult> getScanResults() {
+		return new ArrayList<ScanResult>(scanResults);
+	}
+
+	public synchronized WifiInfo getConnectionInfo() {
+		return connectionInfo;
+	}
+
+	public synchronized DhcpInfo getDhcpInfo() {
+		return dhcpInfo;
+	}
+
+	/** The number of scans started */
+	public synchronized int scanCount() {
+		return scans;
+	}
+
+	public synchronized void setScanResults(List<ScanResult> scanResults) {
+		this.scanResults = new ArrayList<ScanResult>(scanResults);
+	}
+
+	public synchronized void setConnectionInfo(WifiInfo connectionInfo) {
+		this.connectionInfo = connectionInfo;
+	}
+
+	public synchronized void setDhcpInfo(DhcpInfo dhcpInfo) {
+		this.dhcpInfo = dhcpInfo;
+	}
+
+	/** Makes addNetwork fail, as it does for networks another app owns */
+	public synchronized void setRefuseNetworks(boolean refuseNetworks) {
+		this.refuseNetworks = refuseNetworks;
+	}
+
+	/** Changes the radio state and sends WIFI_STATE_CHANGED_ACTION */
+	public void setWifiState(int state) {
+		synchronized (this) {
+			if (this.state == state) {
+				return;
+			}
+			this.state = state;
+		}
+		context.sendBroadcast(new Intent(WIFI_STATE_CHANGED_ACTION).putExtra(EXTRA_WIFI_STATE, state));
+	}
+
+	private void store(int id, WifiConfiguration config) {
+		WifiConfiguration stored = new WifiConfiguration(config);
+		stored.networkId = id;
+		stored.preSharedKey = config.preSharedKey;
+		stored.wepKeys = config.wepKeys.clone();
+		networks.put(id, stored);
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.os;
+
+/**
+ * Stand-in for android.os.Build. SDK_INT is read from the android.sdk system
+ * property, 28 by default, so it is not a compile time constant.
+ */
+public class Build {
+
+	public static class VERSION {
+		public static final int SDK_INT = Integer.getInteger("android.sdk", 28);
+	}
+
+	public static class VERSION_CODES {
+		public static final int KITKAT = 19;
+		public static final int LOLLIPOP = 21;
+		public static final int M = 23;
+		public static final int O = 26;
+		public static final int P = 28;
+		public static final int Q = 29;
+	}
+}
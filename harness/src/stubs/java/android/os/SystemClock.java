@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package android.os;
+
+/**
+ * Stand-in for android.os.SystemClock, on the JVM's monotonic clock. advance
+ * is for tests and has no counterpart in the real class.
+ */
+public final class SystemClock {
+
+	private static volatile long offset;
+
+	private SystemClock() {
+	}
+
+	public static long elapsedRealtime() {
+		return System.nanoTime() / 1000000 + offset;
+	}
+
+	/** Moves the clock forward, as if ms had passed. */
+	public static synchronized void advance(long ms) {
+		offset += ms;
+	}
+}
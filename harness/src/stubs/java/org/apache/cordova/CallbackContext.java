@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/** Stand-in for org.apache.cordova.CallbackContext, as in Cordova 3. */
+public class CallbackContext {
+
+	private final String callbackId;
+	private final CordovaWebView webView;
+	private boolean finished;
+
+	public CallbackContext(String callbackId, CordovaWebView webView) {
+		this.callbackId = callbackId;
+		this.webView = webView;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	public String getCallbackId() {
+		return callbackId;
+	}
+
+	public void sendPluginResult(PluginResult pluginResult) {
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+			finished = !pluginResult.getKeepCallback();
+		}
+		webView.sendPluginResult(pluginResult, callbackId);
+	}
+
+	public void success(JSONObject message) {
+		sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+	}
+
+	public void success(String message) {
+		sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+	}
+
+	public void success(JSONArray message) {
+		sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+	}
+
+	public void success(byte[] message) {
+		sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+	}
+
+	public void success(int message) {
+		sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+	}
+
+	public void success() {
+		sendPluginResult(new PluginResult(PluginResult.Status.OK));
+	}
+
+	public void error(JSONObject message) {
+		sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+	}
+
+	public void error(String message) {
+		sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+	}
+
+	public void error(int message) {
+		sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/** Stand-in for org.apache.cordova.CordovaPlugin, as in Cordova 3. */
+public class CordovaPlugin {
+
+	public CordovaWebView webView;
+	public CordovaInterface cordova;
+
+	public void initialize(CordovaInterface cordova, CordovaWebView webView) {
+		this.cordova = cordova;
+		this.webView = webView;
+	}
+
+	public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+		return false;
+	}
+
+	public void onReset() {
+	}
+
+	public void onDestroy() {
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.cordova;
+
+import java.util.Base64;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/** Stand-in for org.apache.cordova.PluginResult, as in Cordova 3. */
+public class PluginResult {
+
+	public static final int MESSAGE_TYPE_STRING = 1;
+	public static final int MESSAGE_TYPE_JSON = 2;
+	public static final int MESSAGE_TYPE_NUMBER = 3;
+	public static final int MESSAGE_TYPE_BOOLEAN = 4;
+	public static final int MESSAGE_TYPE_NULL = 5;
+	public static final int MESSAGE_TYPE_ARRAYBUFFER = 6;
+	public static final int MESSAGE_TYPE_BINARYSTRING = 7;
+
+	public static final String[] StatusMessages = new String[] { "No result", "OK", "Class not found",
+			"Illegal access", "Instantiation error", "Malformed url", "IO error", "Invalid action", "JSON error",
+			"Error" };
+
+	public enum Status {
+		NO_RESULT, OK, CLASS_NOT_FOUND_EXCEPTION, ILLEGAL_ACCESS_EXCEPTION, INSTANTIATION_EXCEPTION,
+		MALFORMED_URL_EXCEPTION, IO_EXCEPTION, INVALID_ACTION, JSON_EXCEPTION, ERROR
+	}
+
+	private final int status;
+	private final int messageType;
+	private boolean keepCallback = false;
+	private String strMessage;
+	private String encodedMessage;
+
+	public PluginResult(Status status) {
+		this(status, PluginResult.StatusMessages[status.ordinal()]);
+	}
+
+	public PluginResult(Status status, String message) {
+		this.status = status.ordinal();
+		this.messageType = message == null ? MESSAGE_TYPE_NULL : MESSAGE_TYPE_STRING;
+		this.strMessage = message;
+	}
+
+	public PluginResult(Status status, JSONArray message) {
+		this.status = status.ordinal();
+		this.messageType = MESSAGE_TYPE_JSON;
+		encodedMessage = message.toString();
+	}
+
+	public PluginResult(Status status, JSONObject message) {
+		this.status = status.ordinal();
+		this.messageType = MESSAGE_TYPE_JSON;
+		encodedMessage = message.toString();
+	}
+
+	public PluginResult(Status status, int i) {
+		this.status = status.ordinal();
+		this.messageType = MESSAGE_TYPE_NUMBER;
+		this.encodedMessage = "" + i;
+	}
+
+	public PluginResult(Status status, float f) {
+		this.status = status.ordinal();
+		this.messageType = MESSAGE_TYPE_NUMBER;
+		this.encodedMessage = "" + f;
+	}
+
+	public PluginResult(Status status, boolean b) {
+		this.status = status.ordinal();
+		this.messageType = MESSAGE_TYPE_BOOLEAN;
+		this.encodedMessage = Boolean.toString(b);
+	}
+
+	public PluginResult(Status status, byte[] data) {
+		this(status, data, false);
+	}
+
+	public PluginResult(Status status, byte[] data, boolean binaryString) {
+		this.status = status.ordinal();
+		this.messageType = binaryString ? MESSAGE_TYPE_BINARYSTRING : MESSAGE_TYPE_ARRAYBUFFER;
+		this.encodedMessage = Base64.getEncoder().encodeToString(data);
+	}
+
+	public void setKeepCallback(boolean b) {
+		this.keepCallback = b;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public int getMessageType() {
+		return messageType;
+	}
+
+	public String getMessage() {
+		if (encodedMessage == null) {
+			encodedMessage = JSONObject.quote(strMessage);
+		}
+		return encodedMessage;
+	}
+
+	/** The string message, if the type is MESSAGE_TYPE_STRING */
+	public String getStrMessage() {
+		return strMessage;
+	}
+
+	public boolean getKeepCallback() {
+		return this.keepCallback;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class ActionMetricsTest {
+
+	private final ActionMetrics metrics = new ActionMetrics();
+
+	private JSONObject action(String name) throws Exception {
+		return metrics.toJSON().getJSONObject("actions").getJSONObject(name);
+	}
+
+	@Test
+	public void recordsOnceAtEnd() throws Exception {
+		ActionMetrics.Span span = metrics.begin("scan");
+		assertFalse(metrics.toJSON().getJSONObject("actions").has("scan"));
+
+		span.end(false);
+		span.end(true);
+		assertEquals(1, action("scan").getLong("count"));
+		assertEquals(1, action("scan").getLong("failures"));
+	}
+
+	@Test
+	public void innerSpansAddToOuter() throws Exception {
+		ActionMetrics.Span outer = metrics.begin("pipeline");
+		ActionMetrics.Span top = metrics.enter(outer);
+
+		ActionMetrics.Span inner = metrics.begin("addNetwork");
+		ActionMetrics.Span previous = metrics.enter(inner);
+		metrics.binder(metrics.start() - 2000000);
+		metrics.exit(previous);
+		inner.end(true);
+
+		metrics.serialize(metrics.start() - 3000000);
+		metrics.exit(top);
+		outer.end(true);
+
+		assertTrue(action("addNetwork").getJSONObject("binderUs").getLong("max") >= 2000);
+		assertEquals(0, action("addNetwork").getJSONObject("serializeUs").getLong("max"));
+		assertTrue(action("pipeline").getJSONObject("binderUs").getLong("max") >= 2000);
+		assertTrue(action("pipeline").getJSONObject("serializeUs").getLong("max") >= 3000);
+	}
+
+	@Test
+	public void nothingCurrentAfterExit() throws Exception {
+		ActionMetrics.Span span = metrics.begin("scan");
+		metrics.exit(metrics.enter(span));
+		metrics.binder(metrics.start() - 2000000);
+		span.end(true);
+		assertEquals(0, action("scan").getJSONObject("binderUs").getLong("max"));
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import android.net.wifi.ScanResult;
+
+public class AdaptiveScanTest {
+
+	private final List<PluginResult> sent = new ArrayList<PluginResult>();
+	private final CallbackContext callback = new CallbackContext("scan", new CordovaWebView() {
+		public void sendPluginResult(PluginResult result, String callbackId) {
+			sent.add(result);
+		}
+	});
+	private final ScanStore store = new ScanStore();
+
+	private JSONObject update(AdaptiveScan scan, List<ScanResult> results) throws Exception {
+		store.update(results);
+		scan.update(store);
+		PluginResult result = sent.get(sent.size() - 1);
+		assertTrue(result.getKeepCallback());
+		return new JSONObject(result.getMessage());
+	}
+
+	@Test
+	public void backsOffWhileNothingChanges() throws Exception {
+		AdaptiveScan scan = new AdaptiveScan(callback,
+				new JSONObject("{\"minInterval\": 1000, \"maxInterval\": 5000}"));
+		List<ScanResult> results = PluginHarness.accessPoints(20);
+
+		assertTrue(update(scan, results).getBoolean("changed"));
+		assertEquals(1000, scan.interval());
+
+		JSONObject summary = update(scan, results);
+		assertFalse(summary.getBoolean("changed"));
+		assertEquals(0, summary.getDouble("distance"), 0);
+		assertEquals(2000, scan.interval());
+		update(scan, results);
+		update(scan, results);
+		assertEquals(5000, scan.interval());
+
+		summary = update(scan, PluginHarness.accessPoints(40));
+		assertTrue(summary.getBoolean("changed"));
+		assertEquals(20, summary.getInt("added"));
+		assertEquals(0.5, summary.getDouble("distance"), 1e-9);
+		assertEquals(1000, scan.interval());
+	}
+
+	@Test
+	public void driftCountsAsChange() throws Exception {
+		AdaptiveScan scan = new AdaptiveScan(callback, new JSONObject("{\"maxDrift\": 5}"));
+		List<ScanResult> results = PluginHarness.accessPoints(10);
+		update(scan, results);
+		for (ScanResult result : results) {
+			result.level -= 6;
+		}
+		JSONObject summary = update(scan, results);
+		assertEquals(6, summary.getDouble("drift"), 1e-9);
+		assertTrue(summary.getBoolean("changed"));
+	}
+
+	@Test
+	public void stopSilences() throws Exception {
+		AdaptiveScan scan = new AdaptiveScan(callback, null);
+		scan.stop();
+		assertTrue(scan.isStopped());
+		store.update(PluginHarness.accessPoints(3));
+		scan.update(store);
+		assertTrue(sent.isEmpty());
+	}
+
+	@Test
+	public void stopHandsBackThePendingRequest() throws Exception {
+		AdaptiveScan scan = new AdaptiveScan(callback, null);
+		ScanScheduler.Request request = new ScanScheduler.Request(0, true) {
+			void ready() {
+			}
+
+			void failed(String message) {
+			}
+		};
+
+		assertTrue(scan.setPending(request));
+		assertSame(request, scan.stop());
+		assertNull(scan.stop());
+		assertFalse(scan.setPending(request));
+		assertNull(scan.stop());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsBadIntervals() throws Exception {
+		new AdaptiveScan(callback, new JSONObject("{\"minInterval\": 10, \"maxInterval\": 5}"));
+	}
+}
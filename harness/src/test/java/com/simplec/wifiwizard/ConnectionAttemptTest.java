@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import android.net.wifi.SupplicantState;
+import android.net.wifi.WifiInfo;
+
+public class ConnectionAttemptTest {
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+	private final StringBuilder outcome = new StringBuilder();
+	private final ConnectionAttempt attempt = new ConnectionAttempt("\"home\"", 3, new Trace(16)) {
+		void connected(JSONObject timings) {
+			outcome.append("connected");
+		}
+
+		void failed(JSONObject timings) {
+			outcome.append(timings.optString("error"));
+		}
+	};
+
+	@After
+	public void tearDown() {
+		timer.shutdownNow();
+	}
+
+	private ScheduledFuture<?> timeout() {
+		return timer.schedule(new Runnable() {
+			public void run() {
+			}
+		}, 1, TimeUnit.HOURS);
+	}
+
+	@Test
+	public void connectingCancelsTheTimeout() {
+		ScheduledFuture<?> timeout = timeout();
+		attempt.setTimeout(timeout);
+
+		WifiInfo info = new WifiInfo();
+		info.setNetworkId(3);
+		info.setIpAddress(0x0100a8c0);
+		attempt.onSupplicantState(SupplicantState.COMPLETED, false);
+		attempt.onConnected(info);
+
+		assertEquals("connected", outcome.toString());
+		assertTrue(timeout.isCancelled());
+	}
+
+	@Test
+	public void failingCancelsTheTimeout() {
+		ScheduledFuture<?> timeout = timeout();
+		attempt.setTimeout(timeout);
+
+		attempt.onSupplicantState(SupplicantState.DISCONNECTED, true);
+		assertEquals("Authentication failed", outcome.toString());
+		assertTrue(timeout.isCancelled());
+	}
+
+	@Test
+	public void timeoutSetAfterTheEndIsCancelled() {
+		attempt.fail("Cancelled");
+		ScheduledFuture<?> timeout = timeout();
+		attempt.setTimeout(timeout);
+
+		assertTrue(attempt.isFinished());
+		assertTrue(timeout.isCancelled());
+	}
+
+	@Test
+	public void otherNetworksDoNotEndIt() {
+		ScheduledFuture<?> timeout = timeout();
+		attempt.setTimeout(timeout);
+
+		WifiInfo info = new WifiInfo();
+		info.setNetworkId(4);
+		info.setIpAddress(0x0100a8c0);
+		attempt.onConnected(info);
+
+		assertFalse(attempt.isFinished());
+		assertFalse(timeout.isCancelled());
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketsCoverEveryValue() {
+		for (long value : new long[] { 0, 1, 7, 8, 9, 15, 16, 1000, 123456789, Long.MAX_VALUE }) {
+			int bucket = LatencyHistogram.bucket(value);
+			assertTrue(value <= LatencyHistogram.upperBound(bucket));
+			assertTrue(bucket == 0 || value > LatencyHistogram.upperBound(bucket - 1));
+		}
+	}
+
+	@Test
+	public void percentilesWithinAnEighth() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.count());
+		assertTrue(histogram.percentile(50) >= 500 && histogram.percentile(50) <= 500 * 9 / 8);
+		assertTrue(histogram.percentile(99) >= 990 && histogram.percentile(99) <= 1000);
+		assertEquals(1000, histogram.percentile(100));
+	}
+
+	@Test
+	public void emptyAndNegative() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.percentile(50));
+		histogram.record(-5);
+		JSONObject json = histogram.toJSON();
+		assertEquals(0, json.getLong("p50"));
+		assertEquals(0, json.getLong("max"));
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Probes a server on the loopback interface.
+ */
+public class LinkProbeTest {
+
+	private final ServerSocket server;
+
+	public LinkProbeTest() throws Exception {
+		server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.close();
+	}
+
+	private InetSocketAddress address() {
+		return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+	}
+
+	/** Accepts one connection on another thread and hands it to handler */
+	private void serveOnce(final Handler handler) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Socket client = server.accept();
+					try {
+						handler.handle(client);
+					} finally {
+						client.close();
+					}
+				} catch (Exception e) {
+					// the test sees the failure from its side
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private interface Handler {
+		void handle(Socket client) throws Exception;
+	}
+
+	@Test
+	public void timesConnects() throws Exception {
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						server.accept().close();
+					}
+				} catch (Exception e) {
+					// closed
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		JSONObject rtt = new LinkProbe(address(), 2000).rtt(5);
+		assertEquals(5, rtt.getInt("samples"));
+		assertEquals(0, rtt.getInt("failures"));
+		assertTrue(rtt.getDouble("p50Ms") <= rtt.getDouble("maxMs"));
+	}
+
+	@Test
+	public void writeWaitsForTheServer() throws Exception {
+		final long[] received = new long[1];
+		serveOnce(new Handler() {
+			public void handle(Socket client) throws Exception {
+				InputStream in = client.getInputStream();
+				byte[] buffer = new byte[8192];
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					received[0] += n;
+				}
+				Thread.sleep(300);
+			}
+		});
+
+		JSONObject result = new LinkProbe(address(), 5000).throughput(false, 65536, null);
+		assertFalse(result.toString(), result.has("error"));
+		assertEquals(65536, result.getLong("bytes"));
+		assertEquals(65536, received[0]);
+		assertTrue(result.toString(), result.getDouble("ms") >= 250);
+	}
+
+	@Test
+	public void readsUntilClosed() throws Exception {
+		serveOnce(new Handler() {
+			public void handle(Socket client) throws Exception {
+				byte[] request = new byte[4];
+				assertEquals(4, client.getInputStream().read(request));
+				OutputStream out = client.getOutputStream();
+				out.write(new byte[10000]);
+				out.flush();
+			}
+		});
+
+		JSONObject result = new LinkProbe(address(), 5000).throughput(true, 65536, "GET ");
+		assertEquals(10000, result.getLong("bytes"));
+		assertFalse(result.has("error"));
+	}
+
+	@Test
+	public void silentServerTimesOut() throws Exception {
+		serveOnce(new Handler() {
+			public void handle(Socket client) throws Exception {
+				Thread.sleep(2000);
+			}
+		});
+
+		JSONObject result = new LinkProbe(address(), 200).throughput(false, 100, null);
+		assertTrue(result.has("error"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsZeroTimeout() {
+		new LinkProbe(address(), 0);
+	}
+
+	@Test
+	public void probeLinkRejectsBadTimeout() throws Exception {
+		PluginHarness harness = new PluginHarness();
+		try {
+			for (int timeout : new int[] { 0, -1, LinkProbe.MAX_TIMEOUT + 1 }) {
+				JSONObject options = new JSONObject().put("host", "127.0.0.1").put("port", server.getLocalPort())
+						.put("timeout", timeout);
+				assertEquals(PluginResult.Status.ERROR.ordinal(),
+						harness.call("probeLink", options).getStatus());
+			}
+		} finally {
+			harness.destroy();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsTooManySamples() throws Exception {
+		new LinkProbe(address(), 100).rtt(LinkProbe.MAX_SAMPLES + 1);
+	}
+
+	@Test
+	public void probeLinkRejectsBadSamples() throws Exception {
+		PluginHarness harness = new PluginHarness();
+		try {
+			for (int samples : new int[] { 0, LinkProbe.MAX_SAMPLES + 1 }) {
+				JSONObject options = new JSONObject().put("host", "127.0.0.1").put("port", server.getLocalPort())
+						.put("samples", samples);
+				assertEquals(PluginResult.Status.ERROR.ordinal(),
+						harness.call("probeLink", options).getStatus());
+			}
+		} finally {
+			harness.destroy();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NetworkFileReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private NetworkFileReader reader(String name, String text) throws IOException {
+		File file = folder.newFile(name);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		writer.write(text);
+		writer.close();
+		return new NetworkFileReader(file, null);
+	}
+
+	@Test
+	public void readsJsonLines() throws Exception {
+		NetworkFileReader reader = reader("networks.jsonl", "# comment\n"
+				+ "{\"SSID\": \"home\", \"auth\": {\"algorithm\": \"WPA\", \"password\": \"secret\"}}\n\n"
+				+ "{\"ssid\": \"open\", \"hidden\": true}\n" + "not json\n");
+
+		NetworkFileReader.Entry home = reader.next();
+		assertEquals("\"home\"", home.ssid);
+		assertEquals("WPA", home.authType);
+		assertEquals("\"secret\"", home.password);
+		assertEquals(2, home.line);
+
+		NetworkFileReader.Entry open = reader.next();
+		assertEquals("\"open\"", open.ssid);
+		assertEquals("NONE", open.authType);
+		assertTrue(open.hidden);
+
+		assertNotNull(reader.next().error);
+		assertNull(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void readsCsv() throws Exception {
+		NetworkFileReader reader = reader("networks.csv",
+				"ssid,auth,password,hidden\n" + "home,wpa,secret\n" + "\"a, b\",NONE,,true\n" + ",WPA,x\n");
+
+		NetworkFileReader.Entry home = reader.next();
+		assertEquals("\"home\"", home.ssid);
+		assertEquals("WPA", home.authType);
+		assertEquals("\"secret\"", home.password);
+
+		NetworkFileReader.Entry quoted = reader.next();
+		assertEquals("\"a, b\"", quoted.ssid);
+		assertTrue(quoted.hidden);
+
+		assertNotNull(reader.next().error);
+		assertNull(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void skipsHeaderAfterComments() throws Exception {
+		NetworkFileReader reader = reader("header.csv", "# exported\n\n SSID , Auth \nhome,WPA,secret\n");
+		assertEquals("\"home\"", reader.next().ssid);
+		assertNull(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void keepsSsidNamedLikeHeader() throws Exception {
+		NetworkFileReader reader = reader("ssid.csv", "ssid-guest,NONE\nssid,auth\n");
+		assertEquals("\"ssid-guest\"", reader.next().ssid);
+		assertEquals("\"ssid\"", reader.next().ssid);
+		assertNull(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void normalizesAuthCase() throws Exception {
+		NetworkFileReader.Entry json = NetworkFileReader
+				.parse(new JSONObject("{\"SSID\": \"x\", \"auth\": \" wpa\", \"password\": \"p\"}"));
+		assertEquals("WPA", json.authType);
+		assertEquals("\"p\"", json.password);
+
+		NetworkFileReader reader = reader("case.csv", "x,wep,0123456789\n");
+		assertEquals("WEP", reader.next().authType);
+		reader.close();
+	}
+
+	@Test
+	public void passwordDefaultsAuth() throws Exception {
+		NetworkFileReader.Entry entry = NetworkFileReader.parse(new JSONObject("{\"SSID\": \"x\", \"password\": \"p\"}"));
+		assertEquals("WPA", entry.authType);
+		assertEquals(0, entry.line);
+	}
+
+	@Test
+	public void splitsCsv() {
+		assertEquals(Arrays.asList("a", "b \"c\"", ""), NetworkFileReader.splitCsv("a,\"b \"\"c\"\"\","));
+	}
+
+	@Test
+	public void trimsOnlyAroundCsvFields() {
+		assertEquals(Arrays.asList("a b", " c ", "d"), NetworkFileReader.splitCsv(" a b , \" c \" ,d "));
+	}
+
+	@Test
+	public void keepsSpacesInSsid() throws Exception {
+		NetworkFileReader.Entry entry = NetworkFileReader.parse(new JSONObject("{\"SSID\": \" cafe \"}"));
+		assertEquals("\" cafe \"", entry.ssid);
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsUnknownFormat() throws Exception {
+		new NetworkFileReader(folder.newFile("x"), "xml");
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+
+public class NetworkSelectorTest {
+
+	private static WifiConfiguration network(int id, String ssid, int priority) {
+		WifiConfiguration network = new WifiConfiguration();
+		network.networkId = id;
+		network.SSID = ssid;
+		network.priority = priority;
+		return network;
+	}
+
+	private final List<WifiConfiguration> networks = Arrays.asList(network(1, "\"home\"", 0),
+			network(2, "\"work\"", 0), network(3, "686578", 0));
+	private final ScanStore store = new ScanStore();
+
+	@Test
+	public void keepsStrongestAccessPointPerNetwork() throws Exception {
+		store.update(Arrays.asList(new ScanResult("home", "00:00:00:00:00:01", "", -70, 2412),
+				new ScanResult("home", "00:00:00:00:00:02", "", -60, 2437),
+				new ScanResult("work", "00:00:00:00:00:03", "", -65, 2412),
+				new ScanResult("other", "00:00:00:00:00:04", "", -30, 2412)));
+
+		List<NetworkSelector.Candidate> ranked = new NetworkSelector(null).rank(store, networks, -1);
+		assertEquals(2, ranked.size());
+		assertEquals(1, ranked.get(0).networkId);
+		assertEquals(-60, ranked.get(0).level);
+		assertEquals("00:00:00:00:00:02", ranked.get(0).toJSON().getString("BSSID"));
+	}
+
+	@Test
+	public void prefersFiveGigahertzAndCurrent() throws Exception {
+		store.update(Arrays.asList(new ScanResult("home", "00:00:00:00:00:01", "", -60, 2412),
+				new ScanResult("work", "00:00:00:00:00:02", "", -65, 5180)));
+
+		NetworkSelector selector = new NetworkSelector(null);
+		assertEquals(2, selector.rank(store, networks, -1).get(0).networkId);
+
+		NetworkSelector.Candidate best = selector.rank(store, networks, 1).get(0);
+		assertEquals(1, best.networkId);
+		assertTrue(best.current);
+		assertEquals(-52, best.score);
+	}
+
+	@Test
+	public void ignoresWeakAccessPoints() throws Exception {
+		store.update(Arrays.asList(new ScanResult("home", "00:00:00:00:00:01", "", -80, 2412)));
+		assertTrue(new NetworkSelector(new JSONObject("{\"minRssi\": -75}")).rank(store, networks, -1).isEmpty());
+	}
+}
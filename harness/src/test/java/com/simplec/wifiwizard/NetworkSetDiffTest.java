@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import android.net.wifi.WifiConfiguration;
+
+public class NetworkSetDiffTest {
+
+	private static final byte[] KEY = new byte[NetworkSetDiff.KEY_SIZE];
+
+	private static NetworkFileReader.Entry entry(String ssid, String password) throws Exception {
+		return NetworkFileReader.parse(new JSONObject().put("SSID", ssid).put("password", password));
+	}
+
+	private static WifiConfiguration configured(String ssid) {
+		WifiConfiguration network = new WifiConfiguration();
+		network.SSID = '"' + ssid + '"';
+		return network;
+	}
+
+	@Test
+	public void addsUpdatesAndKeeps() throws Exception {
+		NetworkFileReader.Entry home = entry("home", "secret");
+		NetworkFileReader.Entry work = entry("work", "secret");
+		NetworkFileReader.Entry cafe = entry("cafe", "");
+
+		Map<String, String> fingerprints = new HashMap<String, String>();
+		fingerprints.put(home.ssid, NetworkSetDiff.fingerprint(KEY, home));
+		fingerprints.put(work.ssid, NetworkSetDiff.fingerprint(KEY, entry("work", "old")));
+
+		NetworkSetDiff diff = new NetworkSetDiff(Arrays.asList(home, work, cafe),
+				Arrays.asList(configured("home"), configured("work")), fingerprints, KEY, NetworkSetDiff.PRUNE_MANAGED);
+
+		assertEquals(1, diff.unchanged);
+		assertEquals(Collections.singletonList(work), diff.update);
+		assertEquals(Collections.singletonList(cafe), diff.add);
+		assertTrue(diff.remove.isEmpty());
+		assertFalse(diff.isEmpty());
+	}
+
+	@Test
+	public void prunes() throws Exception {
+		NetworkFileReader.Entry home = entry("home", "secret");
+		List<WifiConfiguration> configured = Arrays.asList(configured("home"), configured("managed"),
+				configured("manual"));
+		Map<String, String> fingerprints = new HashMap<String, String>();
+		fingerprints.put("\"managed\"", "x");
+		fingerprints.put("\"gone\"", "y");
+
+		List<NetworkFileReader.Entry> desired = Collections.singletonList(home);
+		assertEquals(1, new NetworkSetDiff(desired, configured, fingerprints, KEY, NetworkSetDiff.PRUNE_MANAGED).remove
+				.size());
+		assertEquals(2, new NetworkSetDiff(desired, configured, fingerprints, KEY, NetworkSetDiff.PRUNE_ALL).remove
+				.size());
+
+		NetworkSetDiff none = new NetworkSetDiff(desired, configured, fingerprints, KEY, NetworkSetDiff.PRUNE_NONE);
+		assertTrue(none.remove.isEmpty());
+		assertEquals(Collections.singletonList("\"gone\""), none.forget);
+	}
+
+	@Test
+	public void lastDuplicateCounts() throws Exception {
+		NetworkFileReader.Entry first = entry("home", "one");
+		NetworkFileReader.Entry second = entry("home", "two");
+		NetworkSetDiff diff = new NetworkSetDiff(Arrays.asList(first, second), new ArrayList<WifiConfiguration>(),
+				new HashMap<String, String>(), KEY, NetworkSetDiff.PRUNE_NONE);
+		assertEquals(Collections.singletonList(second), diff.add);
+	}
+
+	@Test
+	public void fingerprintCoversCredentials() throws Exception {
+		assertEquals(NetworkSetDiff.fingerprint(KEY, entry("home", "secret")),
+				NetworkSetDiff.fingerprint(KEY, entry("home", "secret")));
+		assertNotEquals(NetworkSetDiff.fingerprint(KEY, entry("home", "secret")),
+				NetworkSetDiff.fingerprint(KEY, entry("home", "Secret")));
+	}
+
+	@Test
+	public void fingerprintDependsOnKey() throws Exception {
+		byte[] other = new byte[NetworkSetDiff.KEY_SIZE];
+		other[0] = 1;
+		assertNotEquals(NetworkSetDiff.fingerprint(KEY, entry("home", "secret")),
+				NetworkSetDiff.fingerprint(other, entry("home", "secret")));
+	}
+
+	@Test
+	public void keyIsCreatedOnceAndKept() throws Exception {
+		File file = File.createTempFile("fingerprint", ".key");
+		try {
+			file.delete();
+			byte[] key = NetworkSetDiff.loadKey(file);
+			assertEquals(NetworkSetDiff.KEY_SIZE, file.length());
+			assertArrayEquals(key, NetworkSetDiff.loadKey(file));
+
+			file.delete();
+			assertFalse(Arrays.equals(key, NetworkSetDiff.loadKey(file)));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownPrune() {
+		new NetworkSetDiff(new ArrayList<NetworkFileReader.Entry>(), new ArrayList<WifiConfiguration>(),
+				new HashMap<String, String>(), KEY, "some");
+	}
+}
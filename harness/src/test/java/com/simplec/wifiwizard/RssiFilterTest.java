@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class RssiFilterTest {
+
+	@Test
+	public void smoothsWithEwma() throws Exception {
+		RssiFilter filter = new RssiFilter(new JSONObject("{\"alpha\": 0.5, \"hysteresis\": 1}"));
+		assertEquals(Integer.valueOf(-60), filter.update(-60));
+		assertEquals(Integer.valueOf(-70), filter.update(-80));
+		assertEquals(Integer.valueOf(-75), filter.update(-80));
+	}
+
+	@Test
+	public void takesMedian() throws Exception {
+		RssiFilter filter = new RssiFilter(
+				new JSONObject("{\"smoothing\": \"median\", \"window\": 3, \"hysteresis\": 0}"));
+		filter.update(-60);
+		filter.update(-90);
+		assertEquals(Integer.valueOf(-61), filter.update(-61));
+		assertEquals(Integer.valueOf(-62), filter.update(-62));
+	}
+
+	@Test
+	public void holdsWithinHysteresis() {
+		RssiFilter filter = new RssiFilter(null);
+		assertEquals(Integer.valueOf(-60), filter.update(-60));
+		assertNull(filter.update(-61));
+		assertNull(filter.update(RssiFilter.INVALID_RSSI));
+	}
+
+	@Test
+	public void passesRawValues() throws Exception {
+		RssiFilter filter = new RssiFilter(new JSONObject("{\"smoothing\": \"none\", \"hysteresis\": 3}"));
+		assertEquals(Integer.valueOf(-60), filter.update(-60));
+		assertNull(filter.update(-62));
+		assertEquals(Integer.valueOf(-63), filter.update(-63));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownSmoothing() throws Exception {
+		new RssiFilter(new JSONObject("{\"smoothing\": \"kalman\"}"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsBadAlpha() throws Exception {
+		new RssiFilter(new JSONObject("{\"alpha\": 0}"));
+	}
+}
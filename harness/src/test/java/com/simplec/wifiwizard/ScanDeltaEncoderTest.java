@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import android.net.wifi.ScanResult;
+
+public class ScanDeltaEncoderTest {
+
+	private static final ScanDeltaEncoder.Formatter BSSID = new ScanDeltaEncoder.Formatter() {
+		public JSONObject toJSON(ScanStore store, int row) throws JSONException {
+			return new JSONObject().put("BSSID", ScanStore.formatMac(store.bssid(row)));
+		}
+	};
+
+	private final ScanStore store = new ScanStore();
+	private final ScanDeltaEncoder encoder = new ScanDeltaEncoder();
+
+	private JSONObject encode(long since, ScanResult... results) throws JSONException {
+		store.update(Arrays.asList(results));
+		return encoder.encode(store, store.rows(), BSSID, ScanDeltaEncoder.DEFAULT_RSSI_THRESHOLD, since);
+	}
+
+	@Test
+	public void firstCallIsFull() throws Exception {
+		JSONObject delta = encode(-1, new ScanResult("a", "00:00:00:00:00:01", "", -50, 2412));
+		assertEquals(1, delta.getLong("seq"));
+		assertTrue(delta.getBoolean("full"));
+		assertEquals(1, delta.getJSONArray("added").length());
+	}
+
+	@Test
+	public void sendsOnlyChanges() throws Exception {
+		encode(-1, new ScanResult("a", "00:00:00:00:00:01", "", -50, 2412),
+				new ScanResult("b", "00:00:00:00:00:02", "", -60, 2412),
+				new ScanResult("c", "00:00:00:00:00:03", "", -70, 2412));
+
+		JSONObject delta = encode(1, new ScanResult("a", "00:00:00:00:00:01", "", -52, 2412),
+				new ScanResult("b", "00:00:00:00:00:02", "", -65, 2412),
+				new ScanResult("d", "00:00:00:00:00:04", "", -70, 2412));
+
+		assertFalse(delta.getBoolean("full"));
+		assertEquals(2, delta.getLong("seq"));
+		assertEquals("00:00:00:00:00:04", delta.getJSONArray("added").getJSONObject(0).getString("BSSID"));
+		assertEquals(1, delta.getJSONArray("changed").length());
+		assertEquals("00:00:00:00:00:02", delta.getJSONArray("changed").getJSONObject(0).getString("BSSID"));
+		assertEquals("00:00:00:00:00:03", delta.getJSONArray("removed").getString(0));
+	}
+
+	@Test
+	public void resetSendsFullSet() throws Exception {
+		encode(-1, new ScanResult("a", "00:00:00:00:00:01", "", -50, 2412));
+		long seen = encoder.sequence();
+		encoder.reset();
+
+		JSONObject delta = encode(seen, new ScanResult("a", "00:00:00:00:00:01", "", -50, 2412));
+		assertTrue(delta.getBoolean("full"));
+		assertEquals(1, delta.getJSONArray("added").length());
+	}
+
+	@Test
+	public void staleSequenceGetsFullSet() throws Exception {
+		encode(-1, new ScanResult("a", "00:00:00:00:00:01", "", -50, 2412));
+		encode(1, new ScanResult("a", "00:00:00:00:00:01", "", -50, 2412));
+
+		JSONObject delta = encode(1, new ScanResult("a", "00:00:00:00:00:01", "", -50, 2412));
+		assertTrue(delta.getBoolean("full"));
+		assertEquals(1, delta.getJSONArray("added").length());
+		assertEquals(3, encoder.sequence());
+	}
+
+	@Test
+	public void removedKeepsReportedBssid() throws Exception {
+		encode(-1, new ScanResult("a", "AA:00:00:00:00:01", "", -50, 2412),
+				new ScanResult("b", "bad", "", -50, 2412), new ScanResult("c", "worse", "", -50, 2412));
+		JSONObject delta = encode(1, new ScanResult("b", "bad", "", -50, 2412));
+		assertEquals(1, delta.getJSONArray("removed").length());
+		assertEquals("AA:00:00:00:00:01", delta.getJSONArray("removed").getString(0));
+	}
+
+	@Test
+	public void renamedNetworkChanges() throws Exception {
+		encode(-1, new ScanResult("a", "00:00:00:00:00:01", "", -50, 2412));
+		JSONObject delta = encode(1, new ScanResult("b", "00:00:00:00:00:01", "", -50, 2412));
+		assertEquals(1, delta.getJSONArray("changed").length());
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.net.wifi.ScanResult;
+
+public class ScanFilterTest {
+
+	private final ScanStore store = new ScanStore();
+
+	@Before
+	public void setUp() {
+		store.update(Arrays.asList(new ScanResult("home", "00:00:00:00:00:01", "", -50, 2412),
+				new ScanResult("home", "00:00:00:00:00:02", "", -40, 5180),
+				new ScanResult("cafe", "00:00:00:00:00:03", "", -80, 2437),
+				new ScanResult("airport", "00:00:00:00:00:04", "", -65, 2462)));
+	}
+
+	private int[] apply(String options) throws Exception {
+		return ScanFilter.fromOptions(new JSONObject(options)).apply(store);
+	}
+
+	@Test
+	public void noFilterWithoutOptions() throws Exception {
+		assertNull(ScanFilter.fromOptions(null));
+		assertNull(ScanFilter.fromOptions(new JSONObject("{\"numLevels\": 5}")));
+	}
+
+	@Test
+	public void filtersByRssiAndSsid() throws Exception {
+		assertArrayEquals(new int[] { 0, 1, 3 }, apply("{\"minRssi\": -70}"));
+		assertArrayEquals(new int[] { 0, 1 }, apply("{\"ssidPrefix\": \"ho\"}"));
+		assertArrayEquals(new int[] { 2, 3 }, apply("{\"ssidInclude\": [\"^c\", \"port$\"]}"));
+		assertArrayEquals(new int[] { 2, 3 }, apply("{\"ssidExclude\": \"home\"}"));
+		assertArrayEquals(new int[] { 2 }, apply("{\"bssids\": [\"00:00:00:00:00:03\"]}"));
+	}
+
+	@Test
+	public void dedupesSortsAndLimits() throws Exception {
+		assertArrayEquals(new int[] { 1, 2, 3 }, apply("{\"dedupe\": true}"));
+		assertArrayEquals(new int[] { 1, 0, 3, 2 }, apply("{\"sort\": \"strongest\"}"));
+		assertArrayEquals(new int[] { 2, 3 }, apply("{\"sort\": \"weakest\", \"limit\": 2}"));
+		assertArrayEquals(new int[] { 3, 2 }, apply("{\"sort\": \"ssid\", \"limit\": 2}"));
+		assertArrayEquals(new int[] { 0, 1 }, apply("{\"limit\": 2}"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownSort() throws Exception {
+		ScanFilter.fromOptions(new JSONObject().put("sort", "loudest"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsBadPattern() throws Exception {
+		ScanFilter.fromOptions(new JSONObject().put("ssidInclude", new JSONArray().put("(")));
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import android.net.wifi.ScanResult;
+
+public class ScanHistoryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ScanStore store = new ScanStore();
+
+	private void scan(ScanHistory history, long time, int level) {
+		store.update(Arrays.asList(new ScanResult("a", "00:00:00:00:00:01", "", level, 2412),
+				new ScanResult("b", "00:00:00:00:00:02", "", level - 10, 5180)));
+		history.append(time, store);
+	}
+
+	@Test
+	public void queriesTimeRange() throws Exception {
+		ScanHistory history = new ScanHistory(folder.newFile(), 100);
+		for (int i = 0; i < 10; i++) {
+			scan(history, 1000 + i * 100, -50 - i);
+		}
+
+		JSONObject result = history.query(1200, 1400, null, 100);
+		JSONArray records = result.getJSONArray("records");
+		assertEquals(6, records.length());
+		assertEquals(1200, records.getJSONObject(0).getLong("time"));
+		assertEquals(-52, records.getJSONObject(0).getInt("level"));
+		assertEquals(5180, records.getJSONObject(1).getInt("frequency"));
+		assertEquals("00:00:00:00:00:02", records.getJSONObject(1).getString("BSSID"));
+		assertFalse(result.getBoolean("truncated"));
+		assertEquals(20, result.getInt("stored"));
+	}
+
+	@Test
+	public void filtersAndLimits() throws Exception {
+		ScanHistory history = new ScanHistory(folder.newFile(), 100);
+		for (int i = 0; i < 10; i++) {
+			scan(history, 1000 + i, -50);
+		}
+
+		JSONObject result = history.query(0, Long.MAX_VALUE, Collections.singleton(2L), 3);
+		assertEquals(3, result.getJSONArray("records").length());
+		assertTrue(result.getBoolean("truncated"));
+	}
+
+	@Test
+	public void overwritesOldest() throws Exception {
+		ScanHistory history = new ScanHistory(folder.newFile(), 5);
+		for (int i = 0; i < 10; i++) {
+			scan(history, 1000 + i, -50);
+		}
+
+		JSONObject result = history.query(0, Long.MAX_VALUE, null, 100);
+		assertEquals(5, result.getInt("stored"));
+		assertEquals(1007, result.getJSONArray("records").getJSONObject(0).getLong("time"));
+	}
+
+	@Test
+	public void survivesReopen() throws Exception {
+		File file = folder.newFile();
+		ScanHistory history = new ScanHistory(file, 10);
+		scan(history, 1000, -50);
+		history.close();
+
+		history = new ScanHistory(file, 10);
+		assertEquals(2, history.query(0, Long.MAX_VALUE, null, 100).getInt("stored"));
+		history.close();
+
+		history = new ScanHistory(file, 20);
+		assertEquals(0, history.query(0, Long.MAX_VALUE, null, 100).getInt("stored"));
+		history.close();
+	}
+
+	@Test
+	public void clockGoingBackKeepsOrder() throws Exception {
+		File file = folder.newFile();
+		ScanHistory history = new ScanHistory(file, 100);
+		scan(history, 2000, -50);
+		scan(history, 1000, -50);
+		history.close();
+
+		history = new ScanHistory(file, 100);
+		scan(history, 500, -50);
+		JSONArray records = history.query(0, Long.MAX_VALUE, null, 100).getJSONArray("records");
+		assertEquals(6, records.length());
+		for (int i = 0; i < records.length(); i++) {
+			assertEquals(2000, records.getJSONObject(i).getLong("time"));
+		}
+		assertEquals(6, history.query(2000, 2000, null, 100).getJSONArray("records").length());
+		history.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsHugeCapacity() throws Exception {
+		new ScanHistory(folder.newFile(), ScanHistory.MAX_CAPACITY + 1);
+	}
+
+	@Test
+	public void largestCapacityWraps() throws Exception {
+		ScanHistory history = new ScanHistory(folder.newFile(), ScanHistory.MAX_CAPACITY);
+		scan(history, 1000, -50);
+		assertEquals(2, history.query(0, Long.MAX_VALUE, null, 100).getInt("stored"));
+		history.close();
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Test;
+
+import android.app.Activity;
+import android.net.wifi.WifiManager;
+import android.os.SystemClock;
+
+public class ScanSchedulerTest {
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+	private final WifiManager wifiManager = new WifiManager(new Activity());
+	private final ScanScheduler scheduler = new ScanScheduler(wifiManager, timer);
+	private final StringBuilder outcome = new StringBuilder();
+
+	@After
+	public void tearDown() {
+		timer.shutdownNow();
+	}
+
+	private ScanScheduler.Request request(final String name, long maxAge) {
+		return new ScanScheduler.Request(maxAge, true) {
+			void ready() {
+				outcome.append(name).append(' ');
+			}
+
+			void failed(String message) {
+				outcome.append(name).append(':').append(message).append(' ');
+			}
+		};
+	}
+
+	/** Uses up the Android 9 budget of four scans */
+	private void spendBudget() {
+		for (int i = 0; i < 4; i++) {
+			SystemClock.advance(1);
+			scheduler.request(request("spent", 0));
+			scheduler.onScanResults();
+		}
+		outcome.setLength(0);
+	}
+
+	@Test
+	public void othersResultsAnswerQueuedRequests() {
+		spendBudget();
+		SystemClock.advance(2000);
+
+		scheduler.request(request("fresh", 1000));
+		scheduler.request(request("any", 0));
+		assertEquals("", outcome.toString());
+
+		// results from a scan the plugin did not start
+		scheduler.onScanResults();
+		assertEquals("fresh any ", outcome.toString());
+		assertEquals(4, wifiManager.scanCount());
+	}
+
+	@Test
+	public void withdrawnRequestIsFailed() {
+		spendBudget();
+		SystemClock.advance(2000);
+
+		ScanScheduler.Request request = request("queued", 1000);
+		scheduler.request(request);
+		scheduler.withdraw(request, "stopped");
+		assertEquals("queued:stopped ", outcome.toString());
+
+		scheduler.onScanResults();
+		assertEquals("queued:stopped ", outcome.toString());
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import android.net.wifi.ScanResult;
+
+public class ScanStoreTest {
+
+	@Test
+	public void copiesRowsInOrder() {
+		ScanStore store = new ScanStore();
+		store.update(Arrays.asList(new ScanResult("home", "00:11:22:33:44:55", "[ESS]", -50, 2412),
+				new ScanResult("cafe", "aa:bb:cc:dd:ee:ff", "[ESS]", -70, 5180)));
+
+		assertEquals(2, store.size());
+		assertEquals("home", store.ssid(0));
+		assertEquals(0x001122334455L, store.bssid(0));
+		assertEquals(-50, store.level(0));
+		assertEquals(5180, store.frequency(1));
+		assertEquals("cafe", store.ssid(1));
+	}
+
+	@Test
+	public void growsAndShrinks() {
+		ScanStore store = new ScanStore();
+		store.update(PluginHarness.accessPoints(1000));
+		assertEquals(1000, store.size());
+		assertEquals(999, store.rows()[999]);
+
+		store.update(PluginHarness.accessPoints(3));
+		assertEquals(3, store.size());
+		assertEquals(3, store.rows().length);
+
+		store.update(null);
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	public void nullSsidIsEmpty() {
+		ScanStore store = new ScanStore();
+		store.update(Arrays.asList(new ScanResult(null, "00:11:22:33:44:55", "", -50, 2412)));
+		assertEquals("", store.ssid(0));
+	}
+
+	@Test
+	public void ssidsSurviveManyScans() {
+		ScanStore store = new ScanStore();
+		for (int scan = 0; scan < 10; scan++) {
+			List<ScanResult> results = new ArrayList<ScanResult>();
+			for (int i = 0; i < 200; i++) {
+				results.add(new ScanResult("ssid-" + (scan * 50 + i), String.format("02:00:00:00:%02x:%02x",
+						i >> 8, i & 0xff), "", -60, 2412));
+			}
+			store.update(results);
+			for (int i = 0; i < 200; i++) {
+				assertEquals("ssid-" + (scan * 50 + i), store.ssid(i));
+			}
+		}
+	}
+
+	@Test
+	public void keepsReportedBssid() {
+		ScanStore store = new ScanStore();
+		store.update(Arrays.asList(new ScanResult("a", "AA:BB:CC:DD:EE:FF", "", -50, 2412),
+				new ScanResult("b", "any", "", -50, 2412), new ScanResult("c", null, "", -50, 2412)));
+
+		assertEquals("AA:BB:CC:DD:EE:FF", store.bssidText(0));
+		assertEquals(0xaabbccddeeffL, store.bssid(0));
+		assertEquals("any", store.bssidText(1));
+		assertEquals(0, store.bssid(1));
+		assertEquals(null, store.bssidText(2));
+	}
+
+	@Test
+	public void packsAndFormatsMacs() {
+		long mac = ScanStore.packMac("AA:BB:CC:00:11:22");
+		assertEquals(0xaabbcc001122L, mac);
+		assertEquals("aa:bb:cc:00:11:22", ScanStore.formatMac(mac));
+		assertEquals(0, ScanStore.packMac("not a mac"));
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import android.app.Activity;
+import android.net.wifi.WifiManager;
+
+public class WifiRadioStateTest {
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+	private final WifiRadioState radio = new WifiRadioState(new WifiManager(new Activity()), new ActionMetrics());
+	private final StringBuilder outcome = new StringBuilder();
+
+	@After
+	public void tearDown() {
+		timer.shutdownNow();
+	}
+
+	private WifiRadioState.Waiter waiter(boolean enabled) {
+		return new WifiRadioState.Waiter(enabled) {
+			void reached() {
+				outcome.append("reached");
+			}
+
+			void failed(String message) {
+				outcome.append(message);
+			}
+		};
+	}
+
+	private ScheduledFuture<?> timeout() {
+		return timer.schedule(new Runnable() {
+			public void run() {
+			}
+		}, 1, TimeUnit.HOURS);
+	}
+
+	@Test
+	public void reachingCancelsTheTimeout() {
+		radio.onStateChanged(WifiManager.WIFI_STATE_DISABLED);
+		WifiRadioState.Waiter waiter = waiter(true);
+		radio.await(waiter);
+		ScheduledFuture<?> timeout = timeout();
+		waiter.setTimeout(timeout);
+
+		radio.onStateChanged(WifiManager.WIFI_STATE_ENABLED);
+		assertEquals("reached", outcome.toString());
+		assertTrue(timeout.isCancelled());
+	}
+
+	@Test
+	public void timeoutSetAfterTheWaitIsCancelled() {
+		radio.onStateChanged(WifiManager.WIFI_STATE_ENABLED);
+		WifiRadioState.Waiter waiter = waiter(true);
+		radio.await(waiter);
+		ScheduledFuture<?> timeout = timeout();
+		waiter.setTimeout(timeout);
+
+		assertEquals("reached", outcome.toString());
+		assertTrue(timeout.isCancelled());
+	}
+
+	@Test
+	public void withdrawCancelsTheTimeout() {
+		radio.onStateChanged(WifiManager.WIFI_STATE_DISABLED);
+		WifiRadioState.Waiter waiter = waiter(true);
+		radio.await(waiter);
+		ScheduledFuture<?> timeout = timeout();
+		waiter.setTimeout(timeout);
+
+		radio.withdraw(waiter, "cancelled");
+		assertEquals("cancelled", outcome.toString());
+		assertTrue(timeout.isCancelled());
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import android.content.Intent;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.SystemClock;
+
+/**
+ * Calls through execute against the stand-in WifiManager.
+ */
+public class WifiWizardTest {
+
+	private final PluginHarness harness = new PluginHarness();
+
+	@After
+	public void tearDown() {
+		harness.destroy();
+	}
+
+	@Test
+	public void getScanResults() throws Exception {
+		harness.wifiManager.setScanResults(PluginHarness.accessPoints(10));
+
+		PluginResult result = harness.call("getScanResults", new JSONObject("{\"sort\": \"strongest\", \"limit\": 3}"));
+		assertEquals(PluginResult.Status.OK.ordinal(), result.getStatus());
+		JSONArray scans = new JSONArray(result.getMessage());
+		assertEquals(3, scans.length());
+		assertEquals(-40, scans.getJSONObject(0).getInt("level"));
+	}
+
+	@Test
+	public void getScanResultsKeepsBssidCase() throws Exception {
+		harness.wifiManager.setScanResults(Arrays.asList(new ScanResult("a", "AA:BB:CC:DD:EE:FF", "", -50, 2412),
+				new ScanResult("b", "hidden", "", -60, 2412)));
+
+		JSONArray scans = new JSONArray(harness.call("getScanResults").getMessage());
+		assertEquals("AA:BB:CC:DD:EE:FF", scans.getJSONObject(0).getString("BSSID"));
+		assertEquals("hidden", scans.getJSONObject(1).getString("BSSID"));
+
+		JSONObject columns = new JSONObject(harness.call("getScanResults", new JSONObject().put("format", "columnar"))
+				.getMessage());
+		assertEquals("AA:BB:CC:DD:EE:FF", columns.getJSONArray("bssids").getString(0));
+	}
+
+	@Test
+	public void deltaClientsKeepTheirOwnSequence() throws Exception {
+		harness.wifiManager.setScanResults(PluginHarness.accessPoints(10));
+
+		JSONObject map = new JSONObject(harness.call("getScanResults",
+				new JSONObject("{\"delta\": true, \"client\": \"map\"}")).getMessage());
+		JSONObject list = new JSONObject(harness.call("getScanResults",
+				new JSONObject("{\"delta\": true, \"client\": \"list\"}")).getMessage());
+		assertEquals(10, map.getJSONArray("added").length());
+		assertEquals(10, list.getJSONArray("added").length());
+
+		JSONObject next = new JSONObject(harness.call("getScanResults",
+				new JSONObject().put("delta", true).put("client", "map").put("since", map.getLong("seq")))
+				.getMessage());
+		assertEquals(false, next.getBoolean("full"));
+		assertEquals(0, next.getJSONArray("added").length());
+	}
+
+	@Test
+	public void addAndRemoveNetwork() throws Exception {
+		for (String auth : new String[] { "WPA", "WEP", "NONE" }) {
+			String ssid = "\"" + auth + "\"";
+			String password = auth.equals("WPA") ? "\"secret\"" : auth.equals("WEP") ? "0123456789" : "";
+			assertEquals(auth, PluginResult.Status.OK.ordinal(),
+					harness.call("addNetwork", ssid, auth, password).getStatus());
+		}
+		assertEquals(3, harness.wifiManager.getConfiguredNetworks().size());
+
+		assertEquals(PluginResult.Status.OK.ordinal(), harness.call("removeNetwork", "\"WEP\"").getStatus());
+		assertEquals(2, harness.wifiManager.getConfiguredNetworks().size());
+		assertEquals(PluginResult.Status.ERROR.ordinal(), harness.call("removeNetwork", "\"WEP\"").getStatus());
+	}
+
+	@Test
+	public void metricsCountErrorsAnsweredAfterDispatch() throws Exception {
+		harness.wifiManager.setRefuseNetworks(true);
+		harness.call("addNetwork", "\"refused\"", "NONE");
+		harness.call("removeNetwork", "\"absent\"");
+		harness.call("pipeline", new JSONArray().put(new JSONObject().put("action", "getScanResults")));
+
+		JSONObject actions = new JSONObject(harness.call("getMetrics").getMessage()).getJSONObject("actions");
+		assertEquals(1, actions.getJSONObject("addNetwork").getLong("failures"));
+		assertEquals(1, actions.getJSONObject("removeNetwork").getLong("failures"));
+		assertEquals(1, actions.getJSONObject("getScanResults").getLong("count"));
+		assertEquals(1, actions.getJSONObject("pipeline").getLong("count"));
+		assertEquals(0, actions.getJSONObject("pipeline").getLong("failures"));
+	}
+
+	@Test
+	public void stopWithdrawsPeriodicScansQueuedForBudget() throws Exception {
+		// use up the Android 9 budget of four scans
+		while (harness.wifiManager.scanCount() < 4) {
+			SystemClock.advance(1);
+			harness.call("startScan", new JSONObject().put("waitForResults", true));
+		}
+		harness.activity.idle();
+
+		String periodic = harness.start("startPeriodicScan", new JSONObject().put("minInterval", 1));
+		// results from elsewhere bring the next tick forward while the first is queued
+		harness.activity.sendBroadcast(new Intent(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
+		harness.activity.idle();
+		Thread.sleep(100);
+
+		harness.call("stopPeriodicScan");
+		SystemClock.advance(121000);
+		harness.activity.sendBroadcast(new Intent(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
+		harness.activity.idle();
+
+		assertEquals(4, harness.wifiManager.scanCount());
+		PluginResult last = harness.next(periodic);
+		while (last.getKeepCallback()) {
+			last = harness.next(periodic);
+		}
+		assertEquals(PluginResult.Status.NO_RESULT.ordinal(), last.getStatus());
+	}
+
+	@Test
+	public void replacedSignalWatchIsReleased() throws Exception {
+		WifiInfo info = new WifiInfo();
+		info.setRssi(-60);
+		harness.wifiManager.setConnectionInfo(info);
+
+		String first = harness.start("watchSignalStrength", "a");
+		assertTrue(harness.next(first).getKeepCallback());
+
+		String second = harness.start("watchSignalStrength", "a");
+		assertTrue(harness.next(second).getKeepCallback());
+		PluginResult released = harness.next(first);
+		assertEquals(PluginResult.Status.NO_RESULT.ordinal(), released.getStatus());
+		assertFalse(released.getKeepCallback());
+	}
+
+	@Test
+	public void replacedScanWatchIsReleased() throws Exception {
+		String first = harness.start("watchScanResults", "a", new JSONObject().put("delta", true));
+		assertTrue(harness.next(first).getKeepCallback());
+
+		String second = harness.start("watchScanResults", "a", new JSONObject().put("delta", true));
+		assertTrue(harness.next(second).getKeepCallback());
+		PluginResult released = harness.next(first);
+		assertEquals(PluginResult.Status.NO_RESULT.ordinal(), released.getStatus());
+		assertFalse(released.getKeepCallback());
+	}
+
+	@Test
+	public void checksWepKeyLength() throws Exception {
+		for (String key : new String[] { "abcde", "abcdefghijklm", "0123456789", "0123456789abcdef0123456789" }) {
+			PluginResult result = harness.call("addNetwork", "\"wep-" + key + "\"", "WEP", key);
+			assertEquals(key, PluginResult.Status.OK.ordinal(), result.getStatus());
+		}
+		for (String key : new String[] { "abcdef", "012345678g", "abcdefghijklmn" }) {
+			PluginResult result = harness.call("addNetwork", "\"wep-" + key + "\"", "WEP", key);
+			assertEquals(key, PluginResult.Status.ERROR.ordinal(), result.getStatus());
+		}
+	}
+
+	@Test
+	public void pipelineStepTimesOut() throws Exception {
+		JSONArray steps = new JSONArray()
+				.put(new JSONObject().put("action", "addNetwork").put("args",
+						new JSONArray().put("\"slow\"").put("NONE")))
+				.put(new JSONObject().put("action", "connectNetwork").put("args",
+						new JSONArray().put("\"slow\"").put(new JSONObject().put("await", true).put("timeout", 60000))));
+
+		PluginResult result = harness.call("pipeline", steps, new JSONObject().put("stepTimeout", 200));
+		JSONArray results = new JSONArray(result.getMessage());
+		assertTrue(results.getJSONObject(0).getBoolean("ok"));
+		assertFalse(results.getJSONObject(1).getBoolean("ok"));
+		// the connect attempt answers the cancel with its timings
+		assertEquals("Step timed out", results.getJSONObject(1).getJSONObject("error").getString("error"));
+
+		// the serial lane is free again
+		assertEquals(PluginResult.Status.OK.ordinal(), harness.call("addNetwork", "\"next\"", "NONE").getStatus());
+	}
+
+	@Test
+	public void rejectsUnknownAuth() throws Exception {
+		PluginResult result = harness.call("addNetwork", "\"x\"", "EAP", "");
+		assertEquals(PluginResult.Status.ERROR.ordinal(), result.getStatus());
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Per-action call counts, failure counts and latency histograms.
+ *
+ * Each call is timed by a span, from when its action starts running until its
+ * callback is first answered, and the span records whether that answer was an
+ * error. While an action runs, its thread's current span collects the time
+ * spent in WifiManager calls and in building JSON. Spans entered inside
+ * another, like the steps of a pipeline, add their time to the enclosing span
+ * as well.
+ *
+ * <pre>
+ * long start = metrics.start();
+ * List&lt;ScanResult&gt; results = wifiManager.getScanResults();
+ * metrics.binder(start);
+ * </pre>
+ */
+class ActionMetrics {
+
+	private static class Stats {
+		long count;
+		long failures;
+		final LatencyHistogram total = new LatencyHistogram();
+		final LatencyHistogram binder = new LatencyHistogram();
+		final LatencyHistogram serialize = new LatencyHistogram();
+	}
+
+	/** The time and outcome of one call */
+	class Span {
+		final String action;
+		private final long begin;
+		private Span parent;
+		private long binder;
+		private long serialize;
+		private boolean ended;
+
+		private Span(String action, long begin) {
+			this.action = action;
+			this.begin = begin;
+		}
+
+		private synchronized void add(long binder, long serialize) {
+			this.binder += binder;
+			this.serialize += serialize;
+		}
+
+		/** Records the call; only the first end counts */
+		void end(boolean succeeded) {
+			long total = System.nanoTime() - begin;
+			long binder;
+			long serialize;
+			synchronized (this) {
+				if (ended) {
+					return;
+				}
+				ended = true;
+				binder = this.binder;
+				serialize = this.serialize;
+			}
+			record(action, succeeded, total, binder, serialize);
+		}
+	}
+
+	private final ThreadLocal<Span> current = new ThreadLocal<Span>();
+
+	private final Map<String, Stats> stats = new HashMap<String, Stats>();
+	private long since = System.currentTimeMillis();
+
+	long start() {
+		return System.nanoTime();
+	}
+
+	/** Adds the time since start to the WifiManager time of the current span */
+	void binder(long start) {
+		add(System.nanoTime() - start, 0);
+	}
+
+	/** Adds the time since start to the JSON building time of the current span */
+	void serialize(long start) {
+		add(0, System.nanoTime() - start);
+	}
+
+	/** Starts timing a call of an action */
+	Span begin(String action) {
+		return new Span(action, System.nanoTime());
+	}
+
+	/**
+	 * Makes span the current span of this thread, inside the one that was.
+	 *
+	 * @return the span that was current, to pass to exit
+	 */
+	Span enter(Span span) {
+		Span previous = current.get();
+		span.parent = previous;
+		current.set(span);
+		return previous;
+	}
+
+	/** Makes the span that enter returned current again */
+	void exit(Span previous) {
+		current.set(previous);
+	}
+
+	private void add(long binder, long serialize) {
+		for (Span span = current.get(); span != null; span = span.parent) {
+			span.add(binder, serialize);
+		}
+	}
+
+	private void record(String action, boolean succeeded, long total, long binder, long serialize) {
+		Stats stat;
+		synchronized (stats) {
+			stat = stats.get(action);
+			if (stat == null) {
+				stat = new Stats();
+				stats.put(action, stat);
+			}
+			stat.count++;
+			if (!succeeded) {
+				stat.failures++;
+			}
+		}
+
+		stat.total.record(total / 1000);
+		stat.binder.record(binder / 1000);
+		stat.serialize.record(serialize / 1000);
+	}
+
+	/**
+	 * @return {since, actions: {name: {count, failures, totalUs, binderUs,
+	 *         serializeUs}}}, each histogram as {p50, p99, max} in
+	 *         microseconds
+	 */
+	JSONObject toJSON() throws JSONException {
+		JSONObject actions = new JSONObject();
+		long from;
+
+		synchronized (stats) {
+			from = since;
+			for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+				Stats s = entry.getValue();
+				JSONObject json = new JSONObject();
+				json.put("count", s.count);
+				json.put("failures", s.failures);
+				json.put("totalUs", s.total.toJSON());
+				json.put("binderUs", s.binder.toJSON());
+				json.put("serializeUs", s.serialize.toJSON());
+				actions.put(entry.getKey(), json);
+			}
+		}
+
+		JSONObject metrics = new JSONObject();
+		metrics.put("since", from);
+		metrics.put("actions", actions);
+		return metrics;
+	}
+
+	void reset() {
+		synchronized (stats) {
+			stats.clear();
+			since = System.currentTimeMillis();
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Periodic scanning that slows down while nothing changes.
+ *
+ * Each scan is compared with the one before: the Jaccard distance between
+ * the two sets of BSSIDs (0 for the same set, 1 for nothing in common) and
+ * the mean RSSI drift of the BSSIDs in both. When the distance reaches
+ * minChange or the drift reaches maxDrift the interval drops back to
+ * minInterval; otherwise it doubles, up to maxInterval. Every scan counts,
+ * including the ones other callers start, so the next scan is always
+ * timed from the latest results.
+ */
+class AdaptiveScan {
+
+	static final long DEFAULT_MIN_INTERVAL = 10000;
+	static final long DEFAULT_MAX_INTERVAL = 300000;
+	static final double DEFAULT_MIN_CHANGE = 0.2;
+	static final int DEFAULT_MAX_DRIFT = 8;
+
+	final CallbackContext callbackContext;
+	private final long minInterval;
+	private final long maxInterval;
+	private final double minChange;
+	private final int maxDrift;
+
+	private long interval;
+	private Map<Long, Integer> previous;
+	private int scans;
+	private ScheduledFuture<?> next;
+	private ScanScheduler.Request pending;
+	private boolean stopped;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the intervals are not positive or min is above max
+	 */
+	AdaptiveScan(CallbackContext callbackContext, JSONObject options) {
+		if (options == null) {
+			options = new JSONObject();
+		}
+		this.callbackContext = callbackContext;
+		this.minInterval = options.optLong("minInterval", DEFAULT_MIN_INTERVAL);
+		this.maxInterval = options.optLong("maxInterval", Math.max(DEFAULT_MAX_INTERVAL, minInterval));
+		this.minChange = options.optDouble("minChange", DEFAULT_MIN_CHANGE);
+		this.maxDrift = options.optInt("maxDrift", DEFAULT_MAX_DRIFT);
+		if (minInterval <= 0 || maxInterval < minInterval) {
+			throw new IllegalArgumentException("Scan intervals must be positive, with minInterval <= maxInterval.");
+		}
+		this.interval = minInterval;
+	}
+
+	/** The delay before the next scan */
+	synchronized long interval() {
+		return interval;
+	}
+
+	/**
+	 * Compares a scan with the last one, sets the next interval and sends
+	 * {scans, count, added, removed, distance, drift, changed, interval} to the
+	 * callback. The caller holds the lock on the store.
+	 */
+	synchronized void update(ScanStore store) {
+		if (stopped) {
+			return;
+		}
+
+		Map<Long, Integer> current = new HashMap<Long, Integer>(store.size() * 2);
+		for (int row = 0; row < store.size(); row++) {
+			if (store.bssid(row) != 0) {
+				current.put(store.bssid(row), store.level(row));
+			}
+		}
+
+		int common = 0;
+		int driftSum = 0;
+		if (previous != null) {
+			for (Map.Entry<Long, Integer> entry : current.entrySet()) {
+				Integer level = previous.get(entry.getKey());
+				if (level != null) {
+					common++;
+					driftSum += Math.abs(entry.getValue() - level);
+				}
+			}
+		}
+
+		int added = current.size() - common;
+		int removed = previous == null ? 0 : previous.size() - common;
+		int union = common + added + removed;
+		double distance = union == 0 ? 0 : 1 - (double) common / union;
+		double drift = common == 0 ? 0 : (double) driftSum / common;
+		boolean changed = previous == null || distance >= minChange || drift >= maxDrift;
+
+		interval = changed ? minInterval : Math.min(interval * 2, maxInterval);
+		previous = current;
+		scans++;
+
+		PluginResult result;
+		try {
+			JSONObject summary = new JSONObject();
+			summary.put("scans", scans);
+			summary.put("count", current.size());
+			summary.put("added", added);
+			summary.put("removed", removed);
+			summary.put("distance", distance);
+			summary.put("drift", drift);
+			summary.put("changed", changed);
+			summary.put("interval", interval);
+			result = new PluginResult(PluginResult.Status.OK, summary);
+		} catch (JSONException e) {
+			result = new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+		}
+		result.setKeepCallback(true);
+		callbackContext.sendPluginResult(result);
+	}
+
+	/** Replaces the scheduled scan, or cancels the new one if stopped */
+	synchronized void setNext(ScheduledFuture<?> future) {
+		if (next != null) {
+			next.cancel(false);
+		}
+		next = future;
+		if (stopped) {
+			next.cancel(false);
+		}
+	}
+
+	/**
+	 * Records the scan request about to be made, so stop can withdraw it. Only
+	 * one is outstanding at a time: a tick that comes while the last request is
+	 * still waiting on the scheduler, for example for scan budget, makes none.
+	 *
+	 * @return false if stopped or a request is outstanding, when the request
+	 *         should not be made
+	 */
+	synchronized boolean setPending(ScanScheduler.Request request) {
+		if (stopped || pending != null) {
+			return false;
+		}
+		pending = request;
+		return true;
+	}
+
+	/** Called when a request is answered, so the next tick can make another */
+	synchronized void answered(ScanScheduler.Request request) {
+		if (pending == request) {
+			pending = null;
+		}
+	}
+
+	synchronized boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Cancels the scheduled scan.
+	 *
+	 * @return the outstanding scan request, for the caller to withdraw, or
+	 *         null
+	 */
+	synchronized ScanScheduler.Request stop() {
+		stopped = true;
+		if (next != null) {
+			next.cancel(false);
+		}
+		ScanScheduler.Request request = pending;
+		pending = null;
+		return request;
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * RSSI statistics per BSSID over the last few scans.
+ *
+ * Each BSSID has a small ring of (scan number, level) samples, written as
+ * scans arrive. Samples older than the window are ignored when the stats are
+ * read, so a BSSID that drops out of range counts as seen in fewer of the
+ * scans rather than keeping stale levels. The table holds at most capacity
+ * BSSIDs; it is in access order, so the ones not seen for longest are
+ * evicted first.
+ *
+ * The methods are synchronized, so the stats can be read while a scan is
+ * added.
+ */
+class BssidStats {
+
+	static final int DEFAULT_WINDOW = 10;
+	static final int DEFAULT_CAPACITY = 512;
+
+	private static class Window {
+		final int[] scans;
+		final byte[] levels;
+		String ssid;
+		int frequency;
+		int next;
+
+		Window(int size) {
+			scans = new int[size];
+			levels = new byte[size];
+			// no scan has number -size or less
+			Arrays.fill(scans, Integer.MIN_VALUE);
+		}
+	}
+
+	private static class Summary {
+		long bssid;
+		Window window;
+		int seen;
+		int min;
+		int max;
+		double mean;
+		double variance;
+	}
+
+	private final int window;
+	private final Map<Long, Window> windows;
+	private int scan;
+
+	BssidStats(int window, final int capacity) {
+		if (window <= 0 || window > Byte.MAX_VALUE || capacity <= 0) {
+			throw new IllegalArgumentException("Scan stats window must be 1 to 127 and capacity positive.");
+		}
+		this.window = window;
+		this.windows = new LinkedHashMap<Long, Window>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Window> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/** Adds a scan. The caller holds the lock on the store. */
+	synchronized void update(ScanStore store) {
+		scan++;
+		for (int row = 0; row < store.size(); row++) {
+			long bssid = store.bssid(row);
+			if (bssid == 0) {
+				continue;
+			}
+			Window samples = windows.get(bssid);
+			if (samples == null) {
+				samples = new Window(window);
+				windows.put(bssid, samples);
+			}
+			// a BSSID listed twice in one scan keeps one sample
+			int slot = (samples.next + window - 1) % window;
+			if (samples.scans[slot] != scan) {
+				slot = samples.next;
+				samples.next = (slot + 1) % window;
+			}
+			samples.scans[slot] = scan;
+			samples.levels[slot] = (byte) Math.max(Byte.MIN_VALUE, store.level(row));
+			samples.ssid = store.ssid(row);
+			samples.frequency = store.frequency(row);
+		}
+	}
+
+	/**
+	 * Returns {scans, window, stats: [{BSSID, SSID, frequency, seen, min, max,
+	 * mean, variance}]}, strongest mean first.
+	 *
+	 * @param bssids
+	 *            the BSSIDs to include, or null for all
+	 * @param ssidPrefixes
+	 *            SSID prefixes to include, or null for all
+	 * @param minSeen
+	 *            leave out BSSIDs seen in fewer of the scans
+	 * @param limit
+	 *            the most BSSIDs to send, or 0 for all
+	 */
+	synchronized JSONObject query(Set<Long> bssids, List<String> ssidPrefixes, int minSeen, int limit)
+			throws JSONException {
+		List<Summary> summaries = new ArrayList<Summary>();
+		int oldest = scan - window;
+		for (Map.Entry<Long, Window> entry : windows.entrySet()) {
+			Window samples = entry.getValue();
+			if (bssids != null && !bssids.contains(entry.getKey())) {
+				continue;
+			}
+			if (ssidPrefixes != null && !startsWithAny(samples.ssid, ssidPrefixes)) {
+				continue;
+			}
+
+			Summary summary = summarize(samples, oldest);
+			if (summary.seen == 0 || summary.seen < minSeen) {
+				continue;
+			}
+			summary.bssid = entry.getKey();
+			summaries.add(summary);
+		}
+
+		Collections.sort(summaries, new Comparator<Summary>() {
+			public int compare(Summary a, Summary b) {
+				return Double.compare(b.mean, a.mean);
+			}
+		});
+
+		JSONArray stats = new JSONArray();
+		for (Summary summary : summaries) {
+			if (limit > 0 && stats.length() == limit) {
+				break;
+			}
+			JSONObject json = new JSONObject();
+			json.put("BSSID", ScanStore.formatMac(summary.bssid));
+			json.put("SSID", summary.window.ssid);
+			json.put("frequency", summary.window.frequency);
+			json.put("seen", summary.seen);
+			json.put("min", summary.min);
+			json.put("max", summary.max);
+			json.put("mean", summary.mean);
+			json.put("variance", summary.variance);
+			stats.put(json);
+		}
+
+		JSONObject result = new JSONObject();
+		result.put("scans", Math.min(scan, window));
+		result.put("window", window);
+		result.put("stats", stats);
+		return result;
+	}
+
+	/** Welford's running mean and variance over the samples in the window */
+	private Summary summarize(Window samples, int oldest) {
+		Summary summary = new Summary();
+		summary.window = samples;
+		summary.min = Integer.MAX_VALUE;
+		summary.max = Integer.MIN_VALUE;
+		double m2 = 0;
+		for (int i = 0; i < window; i++) {
+			if (samples.scans[i] <= oldest) {
+				continue;
+			}
+			int level = samples.levels[i];
+			summary.seen++;
+			summary.min = Math.min(summary.min, level);
+			summary.max = Math.max(summary.max, level);
+			double delta = level - summary.mean;
+			summary.mean += delta / summary.seen;
+			m2 += delta * (level - summary.mean);
+		}
+		summary.variance = summary.seen == 0 ? 0 : m2 / summary.seen;
+		return summary;
+	}
+
+	private static boolean startsWithAny(String ssid, List<String> prefixes) {
+		for (String prefix : prefixes) {
+			if (ssid != null && ssid.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiManager;
+
+/**
+ * A snapshot of the configured networks, with an SSID to networkId index over
+ * it.
+ *
+ * Both are filled from getConfiguredNetworks() on first use and dropped when
+ * the system reports that the configured networks changed. When the plugin
+ * adds or removes a network itself the index is kept up to date, and only the
+ * snapshot is dropped.
+ *
+ * Every change bumps the version, so a caller holding an older version knows
+ * its copy is out of date. Versions start from the clock, so they keep going
+ * up across restarts of the plugin.
+ */
+class ConfiguredNetworks {
+
+	/**
+	 * WifiManager.CONFIGURED_NETWORKS_CHANGED_ACTION, which is hidden from the
+	 * public SDK.
+	 */
+	static final String CONFIGURED_NETWORKS_CHANGED_ACTION = "android.net.wifi.CONFIGURED_NETWORKS_CHANGE";
+
+	private final WifiManager wifiManager;
+	private final ActionMetrics metrics;
+	private Map<String, Integer> idsBySsid;
+	private List<WifiConfiguration> networks;
+	private long version = System.currentTimeMillis();
+
+	ConfiguredNetworks(WifiManager wifiManager, ActionMetrics metrics) {
+		this.wifiManager = wifiManager;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns the networkId of the configured network with the given SSID, or
+	 * -1 if there is none.
+	 */
+	synchronized int networkId(String ssid) {
+		if (idsBySsid == null && !load()) {
+			return -1;
+		}
+		Integer id = idsBySsid.get(ssid);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the configured networks, or null if they cannot be read, which
+	 * is the case while wifi is off. The list must not be changed.
+	 */
+	synchronized List<WifiConfiguration> networks() {
+		if (networks == null && !load()) {
+			return null;
+		}
+		return networks;
+	}
+
+	/**
+	 * Returns the version of what networks() returns.
+	 */
+	synchronized long version() {
+		return version;
+	}
+
+	/**
+	 * Records a network the plugin has just added or updated.
+	 */
+	synchronized void put(String ssid, int networkId) {
+		if (idsBySsid != null) {
+			idsBySsid.put(ssid, networkId);
+		}
+		networks = null;
+		version++;
+	}
+
+	/**
+	 * Forgets a network the plugin has just removed.
+	 */
+	synchronized void remove(String ssid) {
+		if (idsBySsid != null) {
+			idsBySsid.remove(ssid);
+		}
+		networks = null;
+		version++;
+	}
+
+	/**
+	 * Drops the snapshot and the index; they are rebuilt on the next lookup.
+	 */
+	synchronized void invalidate() {
+		idsBySsid = null;
+		networks = null;
+		version++;
+	}
+
+	private boolean load() {
+		long start = metrics.start();
+		List<WifiConfiguration> networks = wifiManager.getConfiguredNetworks();
+		metrics.binder(start);
+
+		// null while wifi is off, don't cache that
+		if (networks == null) {
+			return false;
+		}
+
+		Map<String, Integer> ids = new HashMap<String, Integer>(networks.size() * 2);
+		for (WifiConfiguration network : networks) {
+			if (network.SSID != null) {
+				ids.put(network.SSID, network.networkId);
+			}
+		}
+		idsBySsid = ids;
+		this.networks = Collections.unmodifiableList(networks);
+		return true;
+	}
+}
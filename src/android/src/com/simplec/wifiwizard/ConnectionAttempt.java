@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.concurrent.ScheduledFuture;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.net.wifi.SupplicantState;
+import android.net.wifi.WifiInfo;
+import android.os.SystemClock;
+
+/**
+ * Follows one awaited connectNetwork through association, authentication
+ * and DHCP, and times each phase.
+ *
+ * The plugin feeds it the supplicant and network state broadcasts. The
+ * attempt ends with exactly one call to connected or failed, after its
+ * timeout is cancelled.
+ */
+abstract class ConnectionAttempt {
+
+	final String ssid;
+	final int networkId;
+	private final Trace trace;
+
+	private final long started = SystemClock.elapsedRealtime();
+	private long associated = -1;
+	private long authenticated = -1;
+	private long connected = -1;
+	private ScheduledFuture<?> timeout;
+	private boolean finished;
+
+	ConnectionAttempt(String ssid, int networkId, Trace trace) {
+		this.ssid = ssid;
+		this.networkId = networkId;
+		this.trace = trace;
+	}
+
+	/** The network is associated, authenticated and has an IP address */
+	abstract void connected(JSONObject timings);
+
+	/** Authentication failed, the attempt timed out or was replaced */
+	abstract void failed(JSONObject timings);
+
+	void onSupplicantState(SupplicantState state, boolean authenticationFailed) {
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+
+			long now = SystemClock.elapsedRealtime();
+			if (state == SupplicantState.ASSOCIATED && associated < 0) {
+				associated = now;
+			} else if (state == SupplicantState.COMPLETED && authenticated < 0) {
+				if (associated < 0) {
+					associated = now;
+				}
+				authenticated = now;
+			}
+
+			if (!authenticationFailed) {
+				return;
+			}
+			finish();
+		}
+
+		failed(timings("Authentication failed"));
+	}
+
+	/**
+	 * Called when the network state is CONNECTED. Only counts if it is our
+	 * network and it has an address.
+	 */
+	void onConnected(WifiInfo info) {
+		synchronized (this) {
+			if (finished || info == null || info.getNetworkId() != networkId || info.getIpAddress() == 0) {
+				return;
+			}
+
+			connected = SystemClock.elapsedRealtime();
+			if (authenticated < 0) {
+				authenticated = connected;
+			}
+			if (associated < 0) {
+				associated = authenticated;
+			}
+			finish();
+		}
+
+		connected(timings(null));
+	}
+
+	void fail(String message) {
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+			finish();
+		}
+
+		failed(timings(message));
+	}
+
+	synchronized boolean isFinished() {
+		return finished;
+	}
+
+	/** Sets the timeout to cancel when the attempt ends, or cancels it if it has */
+	synchronized void setTimeout(ScheduledFuture<?> timeout) {
+		this.timeout = timeout;
+		if (finished) {
+			timeout.cancel(false);
+		}
+	}
+
+	/** The caller holds the lock */
+	private void finish() {
+		finished = true;
+		if (timeout != null) {
+			timeout.cancel(false);
+		}
+	}
+
+	/**
+	 * The phase durations in ms. Phases that were not reached are left out.
+	 */
+	private synchronized JSONObject timings(String error) {
+		JSONObject timings = new JSONObject();
+		try {
+			if (error != null) {
+				timings.put("error", error);
+			}
+			timings.put("SSID", ssid);
+			timings.put("networkId", networkId);
+			if (associated >= 0) {
+				timings.put("associateMs", associated - started);
+			}
+			if (authenticated >= 0) {
+				timings.put("authenticateMs", authenticated - associated);
+			}
+			if (connected >= 0) {
+				timings.put("obtainIpMs", connected - authenticated);
+			}
+			timings.put("totalMs", (connected >= 0 ? connected : SystemClock.elapsedRealtime()) - started);
+		} catch (JSONException e) {
+			trace.e("connectionTimings", ssid, e.getMessage());
+		}
+		return timings;
+	}
+}
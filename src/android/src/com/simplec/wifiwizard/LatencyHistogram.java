@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A fixed-size histogram of durations in microseconds.
+ *
+ * Buckets are log-linear: each power of two is split into eight buckets, so a
+ * percentile is off by at most 12.5%. Recording is a few shifts and an array
+ * increment, and nothing is allocated.
+ */
+class LatencyHistogram {
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long max;
+
+	synchronized void record(long micros) {
+		if (micros < 0) {
+			micros = 0;
+		}
+		counts[bucket(micros)]++;
+		count++;
+		if (micros > max) {
+			max = micros;
+		}
+	}
+
+	synchronized long count() {
+		return count;
+	}
+
+	/**
+	 * Returns the upper bound of the bucket holding the given percentile, or
+	 * max if that is lower.
+	 */
+	synchronized long percentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(count * percentile / 100.0);
+		if (rank < 1) {
+			rank = 1;
+		}
+
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(upperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	synchronized JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("p50", percentile(50));
+		json.put("p99", percentile(99));
+		json.put("max", max);
+		return json;
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS - 1 + SUB_BITS;
+		int sub = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BITS);
+		return ((long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+	}
+}
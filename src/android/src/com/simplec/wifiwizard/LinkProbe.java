@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Measures a TCP path with plain sockets, so it runs the same against the
+ * gateway on a device and against a local test server anywhere else.
+ *
+ * rtt times TCP connects, which take one round trip to complete, and
+ * reports percentiles over the samples. throughput moves a bounded number of
+ * bytes over one connection: "write" sends them, "read" sends an optional
+ * request and reads until it has them or the server closes. A write is only
+ * done when the server has read everything, so "write" closes its side and
+ * waits for the server to answer or close; the server must read to the end
+ * before it does either.
+ *
+ * Everything blocks; run it off the bridge and the wifi lanes. abort closes
+ * the socket in use and makes the rest of the probe fail fast.
+ */
+class LinkProbe {
+
+	static final int MAX_BYTES = 1 << 20;
+	static final int MAX_TIMEOUT = 60000;
+	static final int MAX_SAMPLES = 100;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final InetSocketAddress target;
+	private final int timeout;
+
+	private volatile boolean aborted;
+	private volatile Socket socket;
+
+	/**
+	 * @param timeout
+	 *            connect and read timeout in ms, from 1 to MAX_TIMEOUT
+	 */
+	LinkProbe(InetSocketAddress target, int timeout) {
+		if (timeout <= 0 || timeout > MAX_TIMEOUT) {
+			throw new IllegalArgumentException("timeout must be between 1 and " + MAX_TIMEOUT + " ms");
+		}
+		this.target = target;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Turns the gateway of DhcpInfo, an IPv4 address stored little-endian in
+	 * an int, into an address.
+	 */
+	static InetAddress fromDhcp(int address) throws UnknownHostException {
+		return InetAddress.getByAddress(new byte[] { (byte) address, (byte) (address >> 8),
+				(byte) (address >> 16), (byte) (address >> 24) });
+	}
+
+	/**
+	 * Times samples TCP connects.
+	 *
+	 * @param samples
+	 *            from 1 to MAX_SAMPLES
+	 * @return {samples, failures, minMs, p50Ms, p90Ms, maxMs}, without the
+	 *         times if every connect failed
+	 */
+	JSONObject rtt(int samples) throws JSONException {
+		if (samples < 1 || samples > MAX_SAMPLES) {
+			throw new IllegalArgumentException("samples must be between 1 and " + MAX_SAMPLES);
+		}
+		long[] micros = new long[samples];
+		int count = 0;
+		String error = null;
+
+		for (int i = 0; i < samples && !aborted; i++) {
+			Socket s = open();
+			long start = System.nanoTime();
+			try {
+				s.connect(target, timeout);
+				micros[count++] = (System.nanoTime() - start) / 1000;
+			} catch (IOException e) {
+				error = e.getMessage();
+			} finally {
+				close(s);
+			}
+		}
+
+		JSONObject rtt = new JSONObject();
+		rtt.put("samples", count);
+		rtt.put("failures", samples - count);
+		if (count > 0) {
+			Arrays.sort(micros, 0, count);
+			rtt.put("minMs", millis(micros[0]));
+			rtt.put("p50Ms", millis(percentile(micros, count, 50)));
+			rtt.put("p90Ms", millis(percentile(micros, count, 90)));
+			rtt.put("maxMs", millis(micros[count - 1]));
+		}
+		if (error != null) {
+			rtt.put("error", error);
+		}
+		return rtt;
+	}
+
+	/**
+	 * Moves up to bytes bytes over one connection. The time starts once the
+	 * connection is up. For a write it stops at the server's first byte back
+	 * or its close, whichever comes first.
+	 *
+	 * @param read
+	 *            true to read from the server, false to write to it
+	 * @param request
+	 *            sent before reading, or null
+	 * @return {bytes, ms, kbps}, or {error} if the connection failed
+	 */
+	JSONObject throughput(boolean read, int bytes, String request) throws JSONException {
+		JSONObject result = new JSONObject();
+		Socket s = open();
+		long moved = 0;
+		long elapsed;
+
+		try {
+			s.connect(target, timeout);
+			s.setSoTimeout(timeout);
+			byte[] buffer = new byte[Math.min(BUFFER_SIZE, bytes)];
+			long start = System.nanoTime();
+
+			if (read) {
+				if (request != null) {
+					OutputStream out = s.getOutputStream();
+					out.write(request.getBytes("UTF-8"));
+					out.flush();
+				}
+				InputStream in = s.getInputStream();
+				int n;
+				while (moved < bytes && (n = in.read(buffer, 0, (int) Math.min(buffer.length, bytes - moved))) > 0) {
+					moved += n;
+				}
+			} else {
+				OutputStream out = s.getOutputStream();
+				while (moved < bytes) {
+					int n = (int) Math.min(buffer.length, bytes - moved);
+					out.write(buffer, 0, n);
+					moved += n;
+				}
+				out.flush();
+				s.shutdownOutput();
+				// the data may still be in our send buffer; wait for the server
+				s.getInputStream().read();
+			}
+			elapsed = System.nanoTime() - start;
+		} catch (IOException e) {
+			result.put("error", aborted ? "Aborted" : e.getMessage());
+			result.put("bytes", moved);
+			return result;
+		} finally {
+			close(s);
+		}
+
+		double ms = elapsed / 1e6;
+		result.put("bytes", moved);
+		result.put("ms", Math.round(ms * 10) / 10.0);
+		result.put("kbps", ms > 0 ? Math.round(moved * 8 / ms) : 0);
+		return result;
+	}
+
+	void abort() {
+		aborted = true;
+		close(socket);
+	}
+
+	boolean isAborted() {
+		return aborted;
+	}
+
+	private Socket open() {
+		Socket s = new Socket();
+		socket = s;
+		if (aborted) {
+			close(s);
+		}
+		return s;
+	}
+
+	private static void close(Socket s) {
+		if (s == null) {
+			return;
+		}
+		try {
+			s.close();
+		} catch (IOException e) {
+			// nothing left to do with it
+		}
+	}
+
+	/** Nearest rank percentile of the first count values, sorted */
+	private static long percentile(long[] sorted, int count, int percent) {
+		int rank = (int) Math.ceil(percent / 100.0 * count);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	private static double millis(long micros) {
+		return Math.round(micros / 100.0) / 10.0;
+	}
+}
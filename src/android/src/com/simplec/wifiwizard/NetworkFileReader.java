@@ -0,0 +1,245 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reads network definitions from a JSON-lines or CSV file, one entry at a
+ * time, so a large file is never held in memory.
+ *
+ * JSON-lines entries look like {"SSID": "name", "auth": "WPA", "password":
+ * "secret", "hidden": false}. The output of WifiWizard.formatWifiConfig, where
+ * auth is an object holding algorithm and password, is accepted as well.
+ *
+ * CSV lines are ssid,auth,password[,hidden]. If the first line that is not
+ * blank or a comment is exactly these column names, it is taken to be a header
+ * and skipped. Spaces around the commas are dropped; an SSID or password that
+ * starts or ends with a space has to be in double quotes.
+ *
+ * SSIDs and WPA passwords are put in double quotes when they are not already,
+ * the same as WifiWizard.formatWifiString does.
+ */
+class NetworkFileReader implements Closeable {
+
+	static final String FORMAT_JSONL = "jsonl";
+	static final String FORMAT_CSV = "csv";
+
+	private static final String[] CSV_COLUMNS = { "ssid", "auth", "password", "hidden" };
+
+	static class Entry {
+		int line;
+		String ssid;
+		String authType;
+		String password;
+		boolean hidden;
+		/** Set instead of the fields above when the line could not be parsed */
+		String error;
+	}
+
+	private final BufferedReader reader;
+	private final boolean csv;
+	private int line;
+	private boolean started;
+
+	NetworkFileReader(File file, String format) throws IOException {
+		if (format == null) {
+			format = file.getName().toLowerCase().endsWith(".csv") ? FORMAT_CSV : FORMAT_JSONL;
+		}
+		if (!format.equals(FORMAT_CSV) && !format.equals(FORMAT_JSONL)) {
+			throw new IOException("Unsupported format: " + format);
+		}
+		this.csv = format.equals(FORMAT_CSV);
+		this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+	}
+
+	/**
+	 * Returns the next entry, or null at the end of the file. Blank lines and
+	 * lines starting with # are skipped.
+	 */
+	Entry next() throws IOException {
+		String text;
+		while ((text = reader.readLine()) != null) {
+			line++;
+			text = text.trim();
+			if (text.length() == 0 || text.charAt(0) == '#') {
+				continue;
+			}
+			if (!started) {
+				started = true;
+				if (csv && isHeader(text)) {
+					continue;
+				}
+			}
+
+			Entry entry = new Entry();
+			entry.line = line;
+			try {
+				if (csv) {
+					parseCsv(text, entry);
+				} else {
+					parseJson(new JSONObject(text), entry);
+				}
+				normalize(entry);
+			} catch (Exception e) {
+				entry.error = e.getMessage();
+			}
+			return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads one network definition given as a JSON object rather than a line
+	 * of a file, as ensureNetworks does. The line is 0.
+	 */
+	static Entry parse(JSONObject json) {
+		Entry entry = new Entry();
+		try {
+			parseJson(json, entry);
+			normalize(entry);
+		} catch (Exception e) {
+			entry.error = e.getMessage();
+		}
+		return entry;
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private static void parseJson(JSONObject json, Entry entry) throws JSONException {
+		entry.ssid = json.has("SSID") ? json.getString("SSID") : json.optString("ssid", null);
+		entry.hidden = json.optBoolean("hidden", false);
+
+		JSONObject auth = json.optJSONObject("auth");
+		if (auth != null) {
+			entry.authType = auth.optString("algorithm", null);
+			entry.password = auth.optString("password", "");
+		} else {
+			entry.authType = json.optString("auth", json.optString("algorithm", null));
+			entry.password = json.optString("password", "");
+		}
+	}
+
+	private static void parseCsv(String text, Entry entry) {
+		List<String> fields = splitCsv(text);
+		entry.ssid = fields.get(0);
+		entry.authType = fields.size() > 1 ? fields.get(1) : null;
+		entry.password = fields.size() > 2 ? fields.get(2) : "";
+		entry.hidden = fields.size() > 3 && Boolean.parseBoolean(fields.get(3).trim());
+	}
+
+	/**
+	 * Tells whether a CSV line is the column names, ssid,auth and optionally
+	 * password and hidden, in any case.
+	 */
+	private static boolean isHeader(String text) {
+		List<String> fields = splitCsv(text);
+		if (fields.size() < 2 || fields.size() > CSV_COLUMNS.length) {
+			return false;
+		}
+		for (int i = 0; i < fields.size(); i++) {
+			if (!fields.get(i).trim().equalsIgnoreCase(CSV_COLUMNS[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Splits a CSV line. Fields may be wrapped in double quotes, and a doubled
+	 * quote inside a quoted field stands for one quote. Whitespace around a
+	 * field is dropped, but not whitespace inside quotes.
+	 */
+	static List<String> splitCsv(String text) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		// the start of the field up to its last closing quote is kept as is
+		int kept = 0;
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (quoted) {
+				if (c == '"') {
+					if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+						field.append('"');
+						i++;
+					} else {
+						quoted = false;
+						kept = field.length();
+					}
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(trimEnd(field, kept));
+				field.setLength(0);
+				kept = 0;
+			} else if (field.length() > 0 || !Character.isWhitespace(c)) {
+				field.append(c);
+			}
+		}
+		fields.add(trimEnd(field, kept));
+		return fields;
+	}
+
+	private static String trimEnd(StringBuilder field, int kept) {
+		int end = field.length();
+		while (end > kept && Character.isWhitespace(field.charAt(end - 1))) {
+			end--;
+		}
+		return field.substring(0, end);
+	}
+
+	private static void normalize(Entry entry) {
+		if (entry.ssid == null || entry.ssid.length() == 0) {
+			throw new IllegalArgumentException("No SSID given.");
+		}
+		if (entry.authType == null || entry.authType.trim().length() == 0) {
+			entry.authType = entry.password.length() == 0 ? "NONE" : "WPA";
+		} else {
+			entry.authType = entry.authType.trim().toUpperCase(Locale.US);
+		}
+		entry.ssid = quote(entry.ssid);
+		if (entry.authType.equals("WPA")) {
+			entry.password = quote(entry.password);
+		}
+	}
+
+	private static String quote(String value) {
+		if (value.length() == 0 || value.charAt(0) != '"') {
+			value = '"' + value;
+		}
+		if (value.length() == 1 || value.charAt(value.length() - 1) != '"') {
+			value = value + '"';
+		}
+		return value;
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.net.wifi.WifiConfiguration;
+
+/**
+ * Picks the configured network to connect to from the latest scan.
+ *
+ * The configured networks are put in a hash table by SSID, and each scanned
+ * access point is looked up in it, keeping the strongest access point of every
+ * configured network in range. Each of those is scored in dB:
+ *
+ * <pre>
+ * score = RSSI + bandBonus (if 5 GHz) + priority * priorityWeight
+ *         + hysteresis (if it is the current network)
+ * </pre>
+ *
+ * so the current network is only left for one that is clearly better, rather
+ * than flapping between two of about the same strength. Ties go to the
+ * higher priority.
+ *
+ * Options read from the connectBest options object:
+ * <ul>
+ * <li>minRssi: ignore access points weaker than this, default -85</li>
+ * <li>bandBonus: dB added for 5 GHz, default 10</li>
+ * <li>priorityWeight: dB added per step of WifiConfiguration.priority,
+ * default 0. Android raises the priority of every network it is told to
+ * connect to, so only use this if the app sets priorities itself.</li>
+ * <li>hysteresis: dB added for the current network, default 8</li>
+ * </ul>
+ */
+class NetworkSelector {
+
+	static class Candidate {
+		final int networkId;
+		final String ssid;
+		final int priority;
+		long bssid;
+		int level;
+		int frequency;
+		int score;
+		boolean current;
+		boolean found;
+
+		Candidate(int networkId, String ssid, int priority) {
+			this.networkId = networkId;
+			this.ssid = ssid;
+			this.priority = priority;
+		}
+
+		JSONObject toJSON() throws JSONException {
+			JSONObject candidate = new JSONObject();
+			candidate.put("SSID", ssid);
+			candidate.put("BSSID", ScanStore.formatMac(bssid));
+			candidate.put("networkId", networkId);
+			candidate.put("level", level);
+			candidate.put("frequency", frequency);
+			candidate.put("score", score);
+			candidate.put("current", current);
+			return candidate;
+		}
+	}
+
+	private static final Comparator<Candidate> BEST_FIRST = new Comparator<Candidate>() {
+		public int compare(Candidate a, Candidate b) {
+			if (a.score != b.score) {
+				return a.score > b.score ? -1 : 1;
+			}
+			return a.priority > b.priority ? -1 : (a.priority == b.priority ? 0 : 1);
+		}
+	};
+
+	private final int minRssi;
+	private final int bandBonus;
+	private final int priorityWeight;
+	private final int hysteresis;
+
+	NetworkSelector(JSONObject options) {
+		if (options == null) {
+			options = new JSONObject();
+		}
+		minRssi = options.optInt("minRssi", -85);
+		bandBonus = options.optInt("bandBonus", 10);
+		priorityWeight = options.optInt("priorityWeight", 0);
+		hysteresis = options.optInt("hysteresis", 8);
+	}
+
+	/**
+	 * Returns the configured networks in range, best first.
+	 *
+	 * @param store
+	 *            the latest scan, locked by the caller
+	 * @param networks
+	 *            the configured networks
+	 * @param currentNetworkId
+	 *            the networkId of the current connection, or -1
+	 */
+	List<Candidate> rank(ScanStore store, List<WifiConfiguration> networks, int currentNetworkId) {
+		Map<String, Candidate> bySsid = new HashMap<String, Candidate>(networks.size() * 2);
+		for (WifiConfiguration network : networks) {
+			String ssid = unquote(network.SSID);
+			if (ssid != null) {
+				bySsid.put(ssid, new Candidate(network.networkId, ssid, network.priority));
+			}
+		}
+
+		List<Candidate> inRange = new ArrayList<Candidate>();
+		for (int row = 0; row < store.size(); row++) {
+			int level = store.level(row);
+			if (level < minRssi) {
+				continue;
+			}
+			Candidate candidate = bySsid.get(store.ssid(row));
+			if (candidate == null) {
+				continue;
+			}
+			if (!candidate.found) {
+				candidate.found = true;
+				inRange.add(candidate);
+			} else if (level <= candidate.level) {
+				continue;
+			}
+			candidate.bssid = store.bssid(row);
+			candidate.level = level;
+			candidate.frequency = store.frequency(row);
+		}
+
+		for (Candidate candidate : inRange) {
+			candidate.current = candidate.networkId == currentNetworkId;
+			candidate.score = candidate.level + candidate.priority * priorityWeight;
+			if (candidate.frequency > 4900) {
+				candidate.score += bandBonus;
+			}
+			if (candidate.current) {
+				candidate.score += hysteresis;
+			}
+		}
+
+		Collections.sort(inRange, BEST_FIRST);
+		return inRange;
+	}
+
+	/**
+	 * Returns the SSID of a configured network as it appears in scan results.
+	 * Configured SSIDs are quoted unless they are written in hex, which scan
+	 * results never are; those give null.
+	 */
+	private static String unquote(String ssid) {
+		if (ssid == null || ssid.length() < 2 || !ssid.startsWith("\"") || !ssid.endsWith("\"")) {
+			return null;
+		}
+		return ssid.substring(1, ssid.length() - 1);
+	}
+}
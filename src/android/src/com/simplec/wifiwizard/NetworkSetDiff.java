@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import android.net.wifi.WifiConfiguration;
+
+/**
+ * The changes that turn the configured networks into a desired set, worked
+ * out in one pass over each.
+ *
+ * Android never hands configured passwords back, so a network's credentials
+ * are compared by fingerprint: an HMAC-SHA256 of the SSID, auth type,
+ * password and hidden flag, recorded when the network is written. The HMAC
+ * key is random per install and kept apart from the fingerprints, so a copy
+ * of the recorded fingerprints cannot be used to guess passwords. A desired network is
+ * unchanged if it is configured and its fingerprint matches the recorded
+ * one, updated if it is configured with other or unknown credentials, and
+ * added if it is not configured. Networks with a recorded fingerprint are
+ * "managed".
+ *
+ * Pruning removes configured networks that are not desired: "managed" only
+ * those with a fingerprint, "all" every one, "none" nothing.
+ */
+class NetworkSetDiff {
+
+	static final String PRUNE_MANAGED = "managed";
+	static final String PRUNE_ALL = "all";
+	static final String PRUNE_NONE = "none";
+	static final int KEY_SIZE = 32;
+
+	final List<NetworkFileReader.Entry> add = new ArrayList<NetworkFileReader.Entry>();
+	final List<NetworkFileReader.Entry> update = new ArrayList<NetworkFileReader.Entry>();
+	final List<WifiConfiguration> remove = new ArrayList<WifiConfiguration>();
+	/** Recorded fingerprints of networks that are neither desired nor configured */
+	final List<String> forget = new ArrayList<String>();
+	int unchanged;
+
+	/**
+	 * @param desired
+	 *            the desired networks, without parse errors; for a repeated
+	 *            SSID the last one counts
+	 * @param configured
+	 *            the configured networks
+	 * @param fingerprints
+	 *            the recorded fingerprints by SSID
+	 * @param key
+	 *            the key the fingerprints were made with
+	 * @throws IllegalArgumentException
+	 *             if prune is unknown
+	 */
+	NetworkSetDiff(List<NetworkFileReader.Entry> desired, List<WifiConfiguration> configured,
+			Map<String, ?> fingerprints, byte[] key, String prune) {
+		if (!prune.equals(PRUNE_MANAGED) && !prune.equals(PRUNE_ALL) && !prune.equals(PRUNE_NONE)) {
+			throw new IllegalArgumentException("Unknown prune mode: " + prune);
+		}
+
+		Map<String, WifiConfiguration> bySsid = new HashMap<String, WifiConfiguration>(configured.size() * 2);
+		for (WifiConfiguration network : configured) {
+			if (network.SSID != null) {
+				bySsid.put(network.SSID, network);
+			}
+		}
+
+		Map<String, NetworkFileReader.Entry> wanted = new LinkedHashMap<String, NetworkFileReader.Entry>();
+		for (NetworkFileReader.Entry entry : desired) {
+			wanted.put(entry.ssid, entry);
+		}
+
+		for (NetworkFileReader.Entry entry : wanted.values()) {
+			if (!bySsid.containsKey(entry.ssid)) {
+				add.add(entry);
+			} else if (fingerprint(key, entry).equals(fingerprints.get(entry.ssid))) {
+				unchanged++;
+			} else {
+				update.add(entry);
+			}
+		}
+
+		if (!prune.equals(PRUNE_NONE)) {
+			for (WifiConfiguration network : bySsid.values()) {
+				if (wanted.containsKey(network.SSID)) {
+					continue;
+				}
+				if (prune.equals(PRUNE_ALL) || fingerprints.containsKey(network.SSID)) {
+					remove.add(network);
+				}
+			}
+		}
+
+		for (String ssid : fingerprints.keySet()) {
+			if (!wanted.containsKey(ssid) && !bySsid.containsKey(ssid)) {
+				forget.add(ssid);
+			}
+		}
+	}
+
+	boolean isEmpty() {
+		return add.isEmpty() && update.isEmpty() && remove.isEmpty();
+	}
+
+	static String fingerprint(byte[] key, NetworkFileReader.Entry entry) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+			String text = entry.ssid + '\0' + entry.authType + '\0' + entry.password + '\0' + entry.hidden;
+			byte[] hash = mac.doFinal(text.getBytes("UTF-8"));
+
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads the fingerprint key from file, first creating it with KEY_SIZE
+	 * random bytes if it is missing or the wrong size.
+	 */
+	static byte[] loadKey(File file) throws IOException {
+		byte[] key = new byte[KEY_SIZE];
+		if (file.length() == KEY_SIZE) {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				int read = 0;
+				while (read < KEY_SIZE) {
+					int n = in.read(key, read, KEY_SIZE - read);
+					if (n < 0) {
+						throw new IOException("Truncated key file " + file);
+					}
+					read += n;
+				}
+			} finally {
+				in.close();
+			}
+			return key;
+		}
+
+		new SecureRandom().nextBytes(key);
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(key);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+			throw new IOException("Could not write " + file);
+		}
+		return key;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * The callback context of one action run by a pipeline. The final result is
+ * kept for the pipeline instead of going to JS; results sent with the
+ * callback kept open, such as NO_RESULT, are dropped.
+ */
+class PipelineStep extends RequestContext {
+
+	private final CountDownLatch answered = new CountDownLatch(1);
+	private PluginResult result;
+
+	PipelineStep(String id, String callbackId, CordovaWebView webView) {
+		super(id, callbackId, webView);
+	}
+
+	void done() {
+	}
+
+	@Override
+	public synchronized boolean isFinished() {
+		return result != null;
+	}
+
+	@Override
+	void deliver(PluginResult result) {
+		if (result.getKeepCallback()) {
+			return;
+		}
+		synchronized (this) {
+			this.result = result;
+		}
+		answered.countDown();
+	}
+
+	/**
+	 * Blocks until the action has answered or the timeout has passed.
+	 *
+	 * @return true if it answered
+	 */
+	boolean await(long timeout) throws InterruptedException {
+		return answered.await(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized boolean isOk() {
+		return result.getStatus() == PluginResult.Status.OK.ordinal();
+	}
+
+	/**
+	 * The message of the result as JS would have received it. Binary results
+	 * are the base64 string Cordova encodes them as.
+	 */
+	synchronized Object value() throws JSONException {
+		switch (result.getMessageType()) {
+		case PluginResult.MESSAGE_TYPE_STRING:
+			return result.getStrMessage();
+		case PluginResult.MESSAGE_TYPE_JSON:
+		case PluginResult.MESSAGE_TYPE_NUMBER:
+		case PluginResult.MESSAGE_TYPE_BOOLEAN:
+			return new JSONTokener(result.getMessage()).nextValue();
+		case PluginResult.MESSAGE_TYPE_NULL:
+			return JSONObject.NULL;
+		default:
+			return result.getMessage();
+		}
+	}
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Presence triggers: rules that fire when matching access points come into
+ * range or drop out of it.
+ *
+ * Each scan is matched against the rules once. A rule on BSSIDs is looked up
+ * by BSSID and a rule on exact SSIDs by SSID, so only the rules with SSID
+ * prefixes are tried against every network. A rule is inside while its
+ * strongest match is at least enterRssi, and stays inside until that drops
+ * below exitRssi. A change has to hold for debounce scans in a row before the
+ * rule's callback gets an enter or exit event; nothing is sent otherwise.
+ *
+ * The methods are synchronized, so rules can be added while a scan is
+ * matched.
+ */
+class PresenceTriggers {
+
+	static final int DEFAULT_ENTER_RSSI = -75;
+	static final int DEFAULT_HYSTERESIS = 5;
+
+	static class Trigger {
+		final String id;
+		final CallbackContext callbackContext;
+		final Set<String> ssids;
+		final List<String> ssidPrefixes;
+		final Set<Long> bssids;
+		final int enterRssi;
+		final int exitRssi;
+		final int debounce;
+
+		boolean inside;
+		int pending;
+		/** The strongest match in the scan being matched */
+		int best;
+		String ssid;
+		long bssid;
+
+		/**
+		 * Reads a rule: SSID (a string or an array), ssidPrefix (the same),
+		 * bssids, enterRssi, exitRssi and debounce. An access point matches
+		 * if its BSSID is listed, when bssids are given, and its SSID equals
+		 * or starts with one given, when SSIDs are given.
+		 *
+		 * @throws IllegalArgumentException
+		 *             if the rule matches nothing or its thresholds are invalid
+		 */
+		Trigger(String id, CallbackContext callbackContext, JSONObject rule) {
+			this.id = id;
+			this.callbackContext = callbackContext;
+
+			List<String> ssids = ScanFilter.strings(rule, "SSID");
+			this.ssids = ssids == null ? null : new HashSet<String>(ssids);
+			this.ssidPrefixes = ScanFilter.strings(rule, "ssidPrefix");
+
+			List<String> bssids = ScanFilter.strings(rule, "bssids");
+			if (bssids == null) {
+				this.bssids = null;
+			} else {
+				this.bssids = new HashSet<Long>();
+				for (String bssid : bssids) {
+					this.bssids.add(ScanStore.packMac(bssid));
+				}
+			}
+
+			if (this.ssids == null && ssidPrefixes == null && this.bssids == null) {
+				throw new IllegalArgumentException("A trigger needs an SSID, ssidPrefix or bssids.");
+			}
+
+			this.enterRssi = rule.optInt("enterRssi", DEFAULT_ENTER_RSSI);
+			this.exitRssi = rule.optInt("exitRssi", enterRssi - DEFAULT_HYSTERESIS);
+			this.debounce = rule.optInt("debounce", 1);
+			if (exitRssi > enterRssi) {
+				throw new IllegalArgumentException("exitRssi must not be above enterRssi.");
+			}
+			if (debounce < 1) {
+				throw new IllegalArgumentException("debounce must be at least 1.");
+			}
+		}
+
+		boolean matchesSsid(String ssid) {
+			if (ssids == null && ssidPrefixes == null) {
+				return true;
+			}
+			if (ssids != null && ssids.contains(ssid)) {
+				return true;
+			}
+			if (ssidPrefixes != null && ssid != null) {
+				for (String prefix : ssidPrefixes) {
+					if (ssid.startsWith(prefix)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	private final Map<String, Trigger> triggers = new HashMap<String, Trigger>();
+	private final Map<Long, List<Trigger>> byBssid = new HashMap<Long, List<Trigger>>();
+	private final Map<String, List<Trigger>> bySsid = new HashMap<String, List<Trigger>>();
+	private final List<Trigger> byPrefix = new ArrayList<Trigger>();
+
+	/**
+	 * Adds a trigger.
+	 *
+	 * @return the trigger it replaces, or null
+	 */
+	synchronized Trigger add(Trigger trigger) {
+		Trigger replaced = remove(trigger.id);
+		triggers.put(trigger.id, trigger);
+
+		if (trigger.bssids != null) {
+			for (Long bssid : trigger.bssids) {
+				index(byBssid, bssid, trigger);
+			}
+		} else if (trigger.ssidPrefixes == null) {
+			for (String ssid : trigger.ssids) {
+				index(bySsid, ssid, trigger);
+			}
+		} else {
+			byPrefix.add(trigger);
+		}
+		return replaced;
+	}
+
+	/**
+	 * Removes a trigger.
+	 *
+	 * @return the trigger, or null if there was none with this id
+	 */
+	synchronized Trigger remove(String id) {
+		Trigger trigger = triggers.remove(id);
+		if (trigger == null) {
+			return null;
+		}
+
+		if (trigger.bssids != null) {
+			for (Long bssid : trigger.bssids) {
+				unindex(byBssid, bssid, trigger);
+			}
+		} else if (trigger.ssidPrefixes == null) {
+			for (String ssid : trigger.ssids) {
+				unindex(bySsid, ssid, trigger);
+			}
+		} else {
+			byPrefix.remove(trigger);
+		}
+		return trigger;
+	}
+
+	/**
+	 * Removes a trigger unless another one has taken its id.
+	 *
+	 * @return true if it was removed
+	 */
+	synchronized boolean remove(Trigger trigger) {
+		if (triggers.get(trigger.id) != trigger) {
+			return false;
+		}
+		remove(trigger.id);
+		return true;
+	}
+
+	synchronized boolean isEmpty() {
+		return triggers.isEmpty();
+	}
+
+	/**
+	 * Matches a scan against the triggers and sends the enter and exit events.
+	 * The caller holds the lock on the store.
+	 */
+	synchronized void evaluate(ScanStore store, long time) {
+		if (triggers.isEmpty()) {
+			return;
+		}
+
+		for (Trigger trigger : triggers.values()) {
+			trigger.best = Integer.MIN_VALUE;
+		}
+
+		for (int row = 0; row < store.size(); row++) {
+			long bssid = store.bssid(row);
+			String ssid = store.ssid(row);
+
+			List<Trigger> candidates = byBssid.get(bssid);
+			if (candidates != null) {
+				for (Trigger trigger : candidates) {
+					if (trigger.matchesSsid(ssid)) {
+						match(trigger, store, row);
+					}
+				}
+			}
+			candidates = bySsid.get(ssid);
+			if (candidates != null) {
+				for (Trigger trigger : candidates) {
+					match(trigger, store, row);
+				}
+			}
+			for (Trigger trigger : byPrefix) {
+				if (trigger.matchesSsid(ssid)) {
+					match(trigger, store, row);
+				}
+			}
+		}
+
+		for (Trigger trigger : triggers.values()) {
+			boolean present = trigger.best >= (trigger.inside ? trigger.exitRssi : trigger.enterRssi);
+			if (present == trigger.inside) {
+				trigger.pending = 0;
+				continue;
+			}
+			if (++trigger.pending < trigger.debounce) {
+				continue;
+			}
+			trigger.inside = present;
+			trigger.pending = 0;
+			send(trigger, time);
+		}
+	}
+
+	private static void match(Trigger trigger, ScanStore store, int row) {
+		int level = store.level(row);
+		if (level > trigger.best) {
+			trigger.best = level;
+			trigger.ssid = store.ssid(row);
+			trigger.bssid = store.bssid(row);
+		}
+	}
+
+	/**
+	 * Sends an event, with the access point that set it off. An exit after
+	 * the access point vanished names the last one that matched.
+	 */
+	private static void send(Trigger trigger, long time) {
+		PluginResult result;
+		try {
+			JSONObject event = new JSONObject();
+			event.put("id", trigger.id);
+			event.put("event", trigger.inside ? "enter" : "exit");
+			event.put("SSID", trigger.ssid);
+			event.put("BSSID", ScanStore.formatMac(trigger.bssid));
+			if (trigger.best != Integer.MIN_VALUE) {
+				event.put("level", trigger.best);
+			}
+			event.put("time", time);
+			result = new PluginResult(PluginResult.Status.OK, event);
+		} catch (JSONException e) {
+			result = new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+		}
+		result.setKeepCallback(true);
+		trigger.callbackContext.sendPluginResult(result);
+	}
+
+	private static <K> void index(Map<K, List<Trigger>> index, K key, Trigger trigger) {
+		List<Trigger> list = index.get(key);
+		if (list == null) {
+			list = new ArrayList<Trigger>(1);
+			index.put(key, list);
+		}
+		list.add(trigger);
+	}
+
+	private static <K> void unindex(Map<K, List<Trigger>> index, K key, Trigger trigger) {
+		List<Trigger> list = index.get(key);
+		if (list != null) {
+			list.remove(trigger);
+			if (list.isEmpty()) {
+				index.remove(key);
+			}
+		}
+	}
+}
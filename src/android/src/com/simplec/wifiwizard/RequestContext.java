@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+
+/**
+ * The callback context of one call into the plugin, which can be cancelled.
+ *
+ * Each call gets its own, so overlapping calls never answer each other's
+ * callbacks. A call is cancelled by the cancel action or when its deadline
+ * passes. Long operations register cancel hooks to stop early, and the ones
+ * that loop check isCancelled. If none of the hooks has answered the callback,
+ * it fails with the reason for the cancel.
+ *
+ * Results sent after the callback is finished are dropped. done is called once
+ * when the callback is finished.
+ *
+ * The call's metrics span ends with the first result: the final one, or for a
+ * watch the kept one that registers it. An error counts as a failure.
+ */
+abstract class RequestContext extends CallbackContext {
+
+	final String id;
+
+	private final List<Runnable> cancelHooks = new ArrayList<Runnable>();
+	private String cancelReason;
+	private ScheduledFuture<?> deadline;
+	private boolean done;
+	private ActionMetrics.Span span;
+
+	RequestContext(String id, String callbackId, CordovaWebView webView) {
+		super(callbackId, webView);
+		this.id = id;
+	}
+
+	/** The callback is finished; the request can be forgotten */
+	abstract void done();
+
+	@Override
+	public void sendPluginResult(PluginResult result) {
+		if (isFinished()) {
+			return;
+		}
+		// ended first, so the call is counted by the time the caller hears back
+		endSpan(result);
+		deliver(result);
+		if (!result.getKeepCallback()) {
+			finish();
+		}
+	}
+
+	/** Hands a result to the JS callback; a pipeline step keeps it instead */
+	void deliver(PluginResult result) {
+		super.sendPluginResult(result);
+	}
+
+	/** Sets the span to end with the first result */
+	void setSpan(ActionMetrics.Span span) {
+		synchronized (this) {
+			if (!isFinished()) {
+				this.span = span;
+				return;
+			}
+		}
+		// answered before it ran, by a cancel
+		span.end(false);
+	}
+
+	synchronized void setDeadline(ScheduledFuture<?> deadline) {
+		this.deadline = deadline;
+	}
+
+	synchronized boolean isCancelled() {
+		return cancelReason != null;
+	}
+
+	synchronized String cancelReason() {
+		return cancelReason;
+	}
+
+	/**
+	 * Registers a hook to run when the request is cancelled, or runs it now if
+	 * it already was.
+	 */
+	void onCancel(Runnable hook) {
+		synchronized (this) {
+			if (cancelReason == null) {
+				cancelHooks.add(hook);
+				return;
+			}
+		}
+		hook.run();
+	}
+
+	/**
+	 * Cancels the request, unless its callback is already finished.
+	 *
+	 * @return true if it was cancelled now
+	 */
+	boolean cancel(String reason) {
+		List<Runnable> hooks;
+		synchronized (this) {
+			if (cancelReason != null || isFinished()) {
+				return false;
+			}
+			cancelReason = reason;
+			hooks = new ArrayList<Runnable>(cancelHooks);
+			cancelHooks.clear();
+		}
+
+		for (Runnable hook : hooks) {
+			hook.run();
+		}
+		error(reason);
+		return true;
+	}
+
+	private void endSpan(PluginResult result) {
+		ActionMetrics.Span ended;
+		synchronized (this) {
+			ended = span;
+			span = null;
+		}
+		if (ended != null) {
+			int status = result.getStatus();
+			ended.end(status == PluginResult.Status.OK.ordinal() || status == PluginResult.Status.NO_RESULT.ordinal());
+		}
+	}
+
+	private void finish() {
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			done = true;
+			cancelHooks.clear();
+			if (deadline != null) {
+				deadline.cancel(false);
+			}
+		}
+		done();
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+/**
+ * Smooths a stream of RSSI samples and decides which ones are worth sending.
+ *
+ * Options read from the watchSignalStrength options object:
+ * <ul>
+ * <li>smoothing: "ewma" (default), "median" or "none"</li>
+ * <li>alpha: weight of a new sample for ewma, 0 to 1, default 0.3</li>
+ * <li>window: number of samples for median, default 5</li>
+ * <li>hysteresis: how many dB the smoothed value must move before it is sent
+ * again, default 2</li>
+ * </ul>
+ */
+class RssiFilter {
+
+	/** WifiInfo reports this, or lower, when there is no connection */
+	static final int INVALID_RSSI = -127;
+
+	private static final int EWMA = 0;
+	private static final int MEDIAN = 1;
+	private static final int NONE = 2;
+
+	private final int smoothing;
+	private final double alpha;
+	private final int hysteresis;
+	private final int[] window;
+	private final int[] sorted;
+
+	private int samples;
+	private double average;
+	private Integer sent;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if an option is out of range
+	 */
+	RssiFilter(JSONObject options) {
+		String name = options == null ? "ewma" : options.optString("smoothing", "ewma");
+		if (name.equals("ewma")) {
+			smoothing = EWMA;
+		} else if (name.equals("median")) {
+			smoothing = MEDIAN;
+		} else if (name.equals("none")) {
+			smoothing = NONE;
+		} else {
+			throw new IllegalArgumentException("Unknown smoothing: " + name);
+		}
+
+		alpha = options == null ? 0.3 : options.optDouble("alpha", 0.3);
+		int size = options == null ? 5 : options.optInt("window", 5);
+		hysteresis = options == null ? 2 : options.optInt("hysteresis", 2);
+
+		if (alpha <= 0 || alpha > 1) {
+			throw new IllegalArgumentException("alpha must be in (0, 1]");
+		}
+		if (size < 1) {
+			throw new IllegalArgumentException("window must be at least 1");
+		}
+
+		window = new int[size];
+		sorted = new int[size];
+	}
+
+	/**
+	 * Adds a sample.
+	 *
+	 * @return the smoothed RSSI if it should be sent, otherwise null
+	 */
+	synchronized Integer update(int rssi) {
+		if (rssi <= INVALID_RSSI) {
+			return null;
+		}
+
+		int smoothed;
+		if (smoothing == EWMA) {
+			average = samples == 0 ? rssi : alpha * rssi + (1 - alpha) * average;
+			smoothed = (int) Math.round(average);
+		} else if (smoothing == MEDIAN) {
+			window[samples % window.length] = rssi;
+			int count = Math.min(samples + 1, window.length);
+			System.arraycopy(window, 0, sorted, 0, count);
+			Arrays.sort(sorted, 0, count);
+			smoothed = sorted[count / 2];
+		} else {
+			smoothed = rssi;
+		}
+		samples++;
+
+		if (sent != null && Math.abs(smoothed - sent) < hysteresis) {
+			return null;
+		}
+		sent = smoothed;
+		return smoothed;
+	}
+}
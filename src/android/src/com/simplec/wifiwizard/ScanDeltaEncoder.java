@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+/**
+ * Encodes scan results as the difference from the previously sent set.
+ *
+ * Every encoded set gets a sequence number. A client passes the last sequence
+ * number it has seen; if that is the one the encoder last produced, only the
+ * networks that appeared, disappeared or changed are sent. Otherwise the whole
+ * set is sent with full set to true, and the client starts over from it.
+ *
+ * A network counts as changed when its SSID changed or its RSSI moved by at
+ * least the threshold since it was last sent, so slow drift is still reported
+ * once it adds up.
+ */
+class ScanDeltaEncoder {
+
+	static final int DEFAULT_RSSI_THRESHOLD = 3;
+
+	private static class Sent {
+		final String bssid;
+		final String ssid;
+		final int level;
+
+		Sent(String bssid, String ssid, int level) {
+			this.bssid = bssid;
+			this.ssid = ssid;
+			this.level = level;
+		}
+	}
+
+	interface Formatter {
+		JSONObject toJSON(ScanStore store, int row) throws JSONException;
+	}
+
+	private Map<Long, Sent> previous = new HashMap<Long, Sent>();
+	private long sequence;
+
+	/**
+	 * Encodes the results against the previous set.
+	 *
+	 * @param store
+	 *            the current scan results, locked by the caller
+	 * @param rows
+	 *            the rows of the store to encode
+	 * @param formatter
+	 *            builds the JSONObject sent for an added or changed network
+	 * @param rssiThreshold
+	 *            how far the RSSI has to move for a network to be sent again
+	 * @param since
+	 *            the last sequence number the client has seen, or -1
+	 * @return the JSONObject with seq, full, added, changed and removed
+	 */
+	synchronized JSONObject encode(ScanStore store, int[] rows, Formatter formatter, int rssiThreshold, long since)
+			throws JSONException {
+		boolean full = since < 0 || since != sequence;
+		Map<Long, Sent> current = new HashMap<Long, Sent>(rows.length * 2);
+
+		JSONArray added = new JSONArray();
+		JSONArray changed = new JSONArray();
+
+		for (int row : rows) {
+			Long bssid = store.bssid(row);
+			if (bssid == 0) {
+				continue;
+			}
+			Sent sent = full ? null : previous.get(bssid);
+			String ssid = store.ssid(row);
+			int level = store.level(row);
+
+			if (sent == null) {
+				added.put(formatter.toJSON(store, row));
+				current.put(bssid, new Sent(store.bssidText(row), ssid, level));
+			} else if (Math.abs(level - sent.level) >= rssiThreshold || !ssid.equals(sent.ssid)) {
+				changed.put(formatter.toJSON(store, row));
+				current.put(bssid, new Sent(store.bssidText(row), ssid, level));
+			} else {
+				current.put(bssid, sent);
+			}
+		}
+
+		JSONArray removed = new JSONArray();
+		if (!full) {
+			for (Map.Entry<Long, Sent> entry : previous.entrySet()) {
+				if (!current.containsKey(entry.getKey())) {
+					removed.put(entry.getValue().bssid);
+				}
+			}
+		}
+
+		previous = current;
+		sequence++;
+
+		JSONObject delta = new JSONObject();
+		delta.put("seq", sequence);
+		delta.put("full", full);
+		delta.put("added", added);
+		delta.put("changed", changed);
+		delta.put("removed", removed);
+		return delta;
+	}
+
+	synchronized long sequence() {
+		return sequence;
+	}
+
+	/**
+	 * Forgets what was sent. The sequence moves on, so the next encode sends
+	 * the full set whatever the client last saw.
+	 */
+	synchronized void reset() {
+		previous = new HashMap<Long, Sent>();
+		sequence++;
+	}
+}
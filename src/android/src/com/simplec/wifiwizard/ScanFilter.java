@@ -0,0 +1,287 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Filters, sorts and limits scan results before they are turned into JSON, so
+ * the work done for getScanResults grows with what is sent rather than with
+ * what is in range.
+ *
+ * Options read from the getScanResults options object:
+ * <ul>
+ * <li>minRssi: drop networks weaker than this</li>
+ * <li>ssidPrefix: keep SSIDs starting with this string, or any of these
+ * strings</li>
+ * <li>ssidInclude: keep SSIDs matching this regex, or any of these</li>
+ * <li>ssidExclude: drop SSIDs matching this regex, or any of these</li>
+ * <li>bssids: keep only these BSSIDs</li>
+ * <li>dedupe: keep only the strongest BSSID of each SSID</li>
+ * <li>sort: "strongest", "weakest" or "ssid"</li>
+ * <li>limit: send at most this many networks, the first ones in sort
+ * order</li>
+ * </ul>
+ */
+class ScanFilter {
+
+	private static final int STRONGEST = 1;
+	private static final int WEAKEST = 2;
+	private static final int BY_SSID = 3;
+
+	private Integer minRssi;
+	private List<String> ssidPrefixes;
+	private List<Pattern> ssidInclude;
+	private List<Pattern> ssidExclude;
+	private Set<Long> bssids;
+	private boolean dedupe;
+	private int order;
+	private int limit;
+
+	private ScanFilter() {
+	}
+
+	/**
+	 * Reads the filter options.
+	 *
+	 * @return the filter, or null when the options ask for no filtering
+	 * @throws IllegalArgumentException
+	 *             if the sort order or a regex is invalid
+	 */
+	static ScanFilter fromOptions(JSONObject options) {
+		if (options == null) {
+			return null;
+		}
+
+		ScanFilter filter = new ScanFilter();
+		boolean any = false;
+
+		if (options.has("minRssi")) {
+			filter.minRssi = options.optInt("minRssi");
+			any = true;
+		}
+
+		List<String> prefixes = strings(options, "ssidPrefix");
+		if (prefixes != null) {
+			filter.ssidPrefixes = prefixes;
+			any = true;
+		}
+
+		filter.ssidInclude = patterns(options, "ssidInclude");
+		filter.ssidExclude = patterns(options, "ssidExclude");
+		any |= filter.ssidInclude != null || filter.ssidExclude != null;
+
+		List<String> bssids = strings(options, "bssids");
+		if (bssids != null) {
+			filter.bssids = new HashSet<Long>();
+			for (String bssid : bssids) {
+				filter.bssids.add(ScanStore.packMac(bssid));
+			}
+			any = true;
+		}
+
+		filter.dedupe = options.optBoolean("dedupe", false);
+		any |= filter.dedupe;
+
+		String sort = options.optString("sort", null);
+		if (sort != null) {
+			if (sort.equals("strongest")) {
+				filter.order = STRONGEST;
+			} else if (sort.equals("weakest")) {
+				filter.order = WEAKEST;
+			} else if (sort.equals("ssid")) {
+				filter.order = BY_SSID;
+			} else {
+				throw new IllegalArgumentException("Unknown sort order: " + sort);
+			}
+			any = true;
+		}
+
+		filter.limit = options.optInt("limit", 0);
+		any |= filter.limit > 0;
+
+		return any ? filter : null;
+	}
+
+	/**
+	 * Returns the rows of the store that pass the filter, in the requested
+	 * order. The caller holds the lock on the store.
+	 */
+	int[] apply(ScanStore store) {
+		Map<String, Integer> strongestBySsid = dedupe ? new LinkedHashMap<String, Integer>() : null;
+		List<Integer> kept = new ArrayList<Integer>();
+
+		for (int row = 0; row < store.size(); row++) {
+			if (!accept(store, row)) {
+				continue;
+			}
+			// hidden networks all have an empty SSID, keep them apart
+			String ssid = store.ssid(row);
+			if (strongestBySsid != null && ssid.length() > 0) {
+				Integer strongest = strongestBySsid.get(ssid);
+				if (strongest == null || store.level(row) > store.level(strongest)) {
+					strongestBySsid.put(ssid, row);
+				}
+			} else {
+				kept.add(row);
+			}
+		}
+
+		if (strongestBySsid != null) {
+			kept.addAll(strongestBySsid.values());
+		}
+
+		Comparator<Integer> comparator = comparator(store);
+		if (comparator != null && limit > 0 && kept.size() > limit) {
+			kept = top(kept, comparator);
+		} else if (comparator != null) {
+			Collections.sort(kept, comparator);
+		}
+
+		int count = limit > 0 ? Math.min(limit, kept.size()) : kept.size();
+		int[] rows = new int[count];
+		for (int i = 0; i < count; i++) {
+			rows[i] = kept.get(i);
+		}
+		return rows;
+	}
+
+	private Comparator<Integer> comparator(final ScanStore store) {
+		if (order == STRONGEST || order == WEAKEST) {
+			final int sign = order == STRONGEST ? 1 : -1;
+			return new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					int la = store.level(a);
+					int lb = store.level(b);
+					return sign * (lb < la ? -1 : (lb == la ? 0 : 1));
+				}
+			};
+		} else if (order == BY_SSID) {
+			return new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return store.ssid(a).compareTo(store.ssid(b));
+				}
+			};
+		}
+		return null;
+	}
+
+	/**
+	 * Keeps the first limit rows in sort order with a heap of size limit,
+	 * whose head is the worst of the rows kept so far.
+	 */
+	private List<Integer> top(List<Integer> rows, Comparator<Integer> order) {
+		Comparator<Integer> worstFirst = Collections.reverseOrder(order);
+		PriorityQueue<Integer> heap = new PriorityQueue<Integer>(limit + 1, worstFirst);
+
+		for (Integer row : rows) {
+			if (heap.size() < limit) {
+				heap.add(row);
+			} else if (order.compare(row, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(row);
+			}
+		}
+
+		List<Integer> top = new ArrayList<Integer>(heap);
+		Collections.sort(top, order);
+		return top;
+	}
+
+	private boolean accept(ScanStore store, int row) {
+		if (minRssi != null && store.level(row) < minRssi) {
+			return false;
+		}
+		if (bssids != null && !bssids.contains(store.bssid(row))) {
+			return false;
+		}
+
+		String ssid = store.ssid(row);
+
+		if (ssidPrefixes != null) {
+			boolean found = false;
+			for (String prefix : ssidPrefixes) {
+				if (ssid.startsWith(prefix)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		if (ssidInclude != null && !matchesAny(ssidInclude, ssid)) {
+			return false;
+		}
+		if (ssidExclude != null && matchesAny(ssidExclude, ssid)) {
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean matchesAny(List<Pattern> patterns, String ssid) {
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(ssid).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads an option that is either a string or an array of strings.
+	 */
+	static List<String> strings(JSONObject options, String name) {
+		if (!options.has(name) || options.isNull(name)) {
+			return null;
+		}
+
+		List<String> values = new ArrayList<String>();
+		JSONArray array = options.optJSONArray(name);
+		if (array == null) {
+			values.add(options.optString(name));
+		} else {
+			for (int i = 0; i < array.length(); i++) {
+				values.add(array.optString(i));
+			}
+		}
+		return values;
+	}
+
+	private static List<Pattern> patterns(JSONObject options, String name) {
+		List<String> regexes = strings(options, name);
+		if (regexes == null) {
+			return null;
+		}
+
+		List<Pattern> patterns = new ArrayList<Pattern>(regexes.size());
+		for (String regex : regexes) {
+			patterns.add(Pattern.compile(regex));
+		}
+		return patterns;
+	}
+}
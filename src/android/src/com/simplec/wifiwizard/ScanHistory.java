@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A size-capped log of every network seen in every scan, kept in a
+ * memory-mapped file so it survives restarts and is never loaded onto the
+ * heap.
+ *
+ * The file is a header followed by a ring of fixed-width records. When the
+ * ring is full the oldest records are overwritten. Records are kept in time
+ * order, so a time range query finds its first record with a binary search.
+ * The wall clock can go back, and the file outlives the process, so a record
+ * is never given a time before the last one written.
+ *
+ * <pre>
+ * header, 24 bytes:
+ *   int  magic 'WWSH'
+ *   int  version (1)
+ *   int  capacity in records
+ *   int  reserved
+ *   long records written so far
+ * record, 18 bytes:
+ *   long time, ms since epoch
+ *   u8[6] BSSID
+ *   s8   RSSI
+ *   u8   reserved
+ *   u16  frequency in MHz
+ * </pre>
+ */
+class ScanHistory {
+
+	static final int DEFAULT_CAPACITY = 100000;
+	/** About 18 MB */
+	static final int MAX_CAPACITY = 1000000;
+
+	private static final int MAGIC = 0x57575348;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final int RECORD_SIZE = 18;
+	private static final int WRITTEN = 16;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private long written;
+	private long lastTime = Long.MIN_VALUE;
+
+	/**
+	 * Opens the history file, keeping what is in it if it has the same
+	 * capacity, and starting it over otherwise.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if capacity is not between 1 and MAX_CAPACITY
+	 */
+	ScanHistory(File path, int capacity) throws IOException {
+		if (capacity <= 0 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("Scan history capacity must be between 1 and " + MAX_CAPACITY + ".");
+		}
+		this.capacity = capacity;
+		this.file = new RandomAccessFile(path, "rw");
+
+		long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+		boolean reuse = file.length() == size;
+		try {
+			this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+
+		if (reuse && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getInt(8) == capacity) {
+			written = buffer.getLong(WRITTEN);
+			if (written > 0) {
+				lastTime = buffer.getLong(offset(written - 1));
+			}
+		} else {
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, capacity);
+			buffer.putInt(12, 0);
+			buffer.putLong(WRITTEN, 0);
+			written = 0;
+		}
+	}
+
+	/**
+	 * Appends a record for every row of the store with a valid BSSID, at time
+	 * or the time of the last record if that is later. The caller holds the
+	 * lock on the store.
+	 */
+	synchronized void append(long time, ScanStore store) {
+		time = Math.max(time, lastTime);
+		lastTime = time;
+		for (int row = 0; row < store.size(); row++) {
+			long mac = store.bssid(row);
+			if (mac == 0) {
+				continue;
+			}
+			int offset = offset(written);
+
+			buffer.putLong(offset, time);
+			for (int i = 0; i < 6; i++) {
+				buffer.put(offset + 8 + i, (byte) (mac >>> (40 - i * 8)));
+			}
+			buffer.put(offset + 14, (byte) Math.max(-128, Math.min(127, store.level(row))));
+			buffer.put(offset + 15, (byte) 0);
+			buffer.putShort(offset + 16, (short) store.frequency(row));
+			written++;
+		}
+
+		buffer.putLong(WRITTEN, written);
+	}
+
+	/**
+	 * Returns the records in [from, to], oldest first, optionally only those
+	 * of the given BSSIDs.
+	 *
+	 * @param bssids
+	 *            packed MACs as returned by ScanStore.packMac, or null for all
+	 * @param limit
+	 *            the most records to return
+	 */
+	synchronized JSONObject query(long from, long to, Set<Long> bssids, int limit) throws JSONException {
+		long oldest = Math.max(0, written - capacity);
+		long first = firstAtOrAfter(oldest, from);
+
+		JSONArray records = new JSONArray();
+		boolean truncated = false;
+
+		for (long n = first; n < written; n++) {
+			int offset = offset(n);
+			long time = buffer.getLong(offset);
+			if (time > to) {
+				break;
+			}
+
+			long mac = 0;
+			for (int i = 0; i < 6; i++) {
+				mac = mac << 8 | buffer.get(offset + 8 + i) & 0xff;
+			}
+			if (bssids != null && !bssids.contains(mac)) {
+				continue;
+			}
+
+			if (records.length() == limit) {
+				truncated = true;
+				break;
+			}
+
+			JSONObject record = new JSONObject();
+			record.put("time", time);
+			record.put("BSSID", ScanStore.formatMac(mac));
+			record.put("level", (int) buffer.get(offset + 14));
+			record.put("frequency", buffer.getShort(offset + 16) & 0xffff);
+			records.put(record);
+		}
+
+		JSONObject result = new JSONObject();
+		result.put("records", records);
+		result.put("truncated", truncated);
+		result.put("stored", written - oldest);
+		return result;
+	}
+
+	synchronized void close() throws IOException {
+		buffer.force();
+		file.close();
+	}
+
+	/**
+	 * Binary search for the first record at or after time, between oldest
+	 * and the last record written.
+	 */
+	private long firstAtOrAfter(long oldest, long time) {
+		long low = oldest;
+		long high = written;
+		while (low < high) {
+			long mid = (low + high) >>> 1;
+			if (buffer.getLong(offset(mid)) < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private int offset(long record) {
+		return (int) (HEADER_SIZE + (record % capacity) * RECORD_SIZE);
+	}
+}
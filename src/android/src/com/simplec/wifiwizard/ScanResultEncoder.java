@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.net.wifi.WifiManager;
+
+/**
+ * The compact formats of getScanResults. WifiWizard.decodeScanResults in
+ * www/WifiWizard.js turns both back into the usual list of objects.
+ *
+ * "columnar" is one JSONObject of parallel arrays: ssids, bssids, levels and
+ * frequencies.
+ *
+ * "binary" is sent as an ArrayBuffer. All numbers are big-endian:
+ *
+ * <pre>
+ * u8   version (1)
+ * u16  count
+ * count times:
+ *   u8[6] BSSID
+ *   s8    level
+ *   u16   frequency in MHz
+ *   u8    SSID length in bytes
+ *   u8[]  SSID, UTF-8
+ * </pre>
+ */
+class ScanResultEncoder {
+
+	static final String FORMAT_COLUMNAR = "columnar";
+	static final String FORMAT_BINARY = "binary";
+
+	private static final int BINARY_VERSION = 1;
+	private static final int MAX_SSID_BYTES = 255;
+
+	private ScanResultEncoder() {
+	}
+
+	static JSONObject columnar(ScanStore store, int[] rows, Integer numLevels) throws JSONException {
+		JSONArray ssids = new JSONArray();
+		JSONArray bssids = new JSONArray();
+		JSONArray levels = new JSONArray();
+		JSONArray frequencies = new JSONArray();
+
+		for (int row : rows) {
+			ssids.put(store.ssid(row));
+			bssids.put(store.bssidText(row));
+			levels.put(level(store, row, numLevels));
+			frequencies.put(store.frequency(row));
+		}
+
+		JSONObject columns = new JSONObject();
+		columns.put("ssids", ssids);
+		columns.put("bssids", bssids);
+		columns.put("levels", levels);
+		columns.put("frequencies", frequencies);
+		return columns;
+	}
+
+	static byte[] binary(ScanStore store, int[] rows, Integer numLevels) {
+		int count = Math.min(rows.length, 0xffff);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(3 + count * 24);
+
+		out.write(BINARY_VERSION);
+		out.write(count >> 8);
+		out.write(count);
+
+		for (int i = 0; i < count; i++) {
+			int row = rows[i];
+
+			long mac = store.bssid(row);
+			for (int shift = 40; shift >= 0; shift -= 8) {
+				out.write((int) (mac >>> shift));
+			}
+
+			int level = level(store, row, numLevels);
+			out.write(Math.max(-128, Math.min(127, level)));
+
+			int frequency = store.frequency(row);
+			out.write(frequency >> 8);
+			out.write(frequency);
+
+			byte[] ssid = utf8(store.ssid(row));
+			int length = Math.min(ssid.length, MAX_SSID_BYTES);
+			out.write(length);
+			out.write(ssid, 0, length);
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Parses a MAC address written as six hex pairs into mac. Anything else
+	 * gives all zeros.
+	 */
+	static void parseMac(String text, byte[] mac) {
+		if (text == null || text.length() != 17) {
+			Arrays.fill(mac, (byte) 0);
+			return;
+		}
+		for (int i = 0; i < 6; i++) {
+			int high = Character.digit(text.charAt(i * 3), 16);
+			int low = Character.digit(text.charAt(i * 3 + 1), 16);
+			if (high < 0 || low < 0) {
+				Arrays.fill(mac, (byte) 0);
+				return;
+			}
+			mac[i] = (byte) (high << 4 | low);
+		}
+	}
+
+	private static int level(ScanStore store, int row, Integer numLevels) {
+		int level = store.level(row);
+		return numLevels == null ? level : WifiManager.calculateSignalLevel(level, numLevels);
+	}
+
+	private static byte[] utf8(String text) {
+		if (text == null) {
+			return new byte[0];
+		}
+		try {
+			return text.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
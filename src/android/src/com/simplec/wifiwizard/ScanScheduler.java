@@ -0,0 +1,274 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.SystemClock;
+
+/**
+ * Decides when wifiManager.startScan() is actually called.
+ *
+ * Requests made while a scan is running join it instead of starting another.
+ * A request whose maxAge is met by the last completed scan is answered from
+ * it, including requests still waiting for budget when results arrive from a
+ * scan someone else started. Scans are only started while the platform's scan budget has room
+ * (Android 9 allows four per two minutes to a foreground app); requests made
+ * when it is used up wait for the oldest scan to leave the window.
+ */
+class ScanScheduler {
+
+	/** Android 9, Build.VERSION_CODES.P */
+	private static final int SDK_THROTTLED = 28;
+	private static final int THROTTLE_BUDGET = 4;
+	private static final long THROTTLE_WINDOW = 120000;
+	private static final long SCAN_TIMEOUT = 15000;
+
+	/**
+	 * A caller waiting on the scheduler. Exactly one of ready or failed is
+	 * called, never with the scheduler locked.
+	 */
+	abstract static class Request {
+		/** Oldest acceptable scan age in ms, 0 to always scan */
+		final long maxAge;
+		/** true to be told when results arrive, false when the scan starts */
+		final boolean waitForResults;
+
+		Request(long maxAge, boolean waitForResults) {
+			this.maxAge = maxAge;
+			this.waitForResults = waitForResults;
+		}
+
+		abstract void ready();
+
+		abstract void failed(String message);
+	}
+
+	private final WifiManager wifiManager;
+	private final ScheduledExecutorService timer;
+	private final int budget;
+
+	/** Start times of the scans still inside the throttle window */
+	private final LinkedList<Long> starts = new LinkedList<Long>();
+	/** Requests waiting for budget */
+	private final List<Request> queued = new ArrayList<Request>();
+	/** Requests waiting for the running scan to complete */
+	private final List<Request> waiting = new ArrayList<Request>();
+
+	private boolean inFlight;
+	private long lastResults = -1;
+	private ScheduledFuture<?> retry;
+	private ScheduledFuture<?> timeout;
+
+	ScanScheduler(WifiManager wifiManager, ScheduledExecutorService timer) {
+		this.wifiManager = wifiManager;
+		this.timer = timer;
+		this.budget = Build.VERSION.SDK_INT >= SDK_THROTTLED ? THROTTLE_BUDGET : Integer.MAX_VALUE;
+	}
+
+	void request(Request request) {
+		List<Request> ready = new ArrayList<Request>();
+		List<Request> failed = new ArrayList<Request>();
+
+		synchronized (this) {
+			long now = SystemClock.elapsedRealtime();
+
+			if (lastResults >= 0 && now - lastResults <= request.maxAge) {
+				ready.add(request);
+			} else if (inFlight) {
+				(request.waitForResults ? waiting : ready).add(request);
+			} else {
+				queued.add(request);
+				drain(ready, failed);
+			}
+		}
+
+		notify(ready, failed, null);
+	}
+
+	/**
+	 * Called for every SCAN_RESULTS_AVAILABLE_ACTION, whoever started the
+	 * scan.
+	 */
+	void onScanResults() {
+		List<Request> ready;
+		List<Request> failed = new ArrayList<Request>();
+
+		synchronized (this) {
+			inFlight = false;
+			lastResults = SystemClock.elapsedRealtime();
+			cancel(timeout);
+
+			ready = new ArrayList<Request>(waiting);
+			waiting.clear();
+			for (Iterator<Request> i = queued.iterator(); i.hasNext();) {
+				Request request = i.next();
+				if (SystemClock.elapsedRealtime() - lastResults <= request.maxAge) {
+					ready.add(request);
+					i.remove();
+				}
+			}
+			if (queued.isEmpty()) {
+				cancel(retry);
+			}
+			drain(ready, failed);
+		}
+
+		notify(ready, failed, "Scan failed");
+	}
+
+	/**
+	 * The time the last scan results arrived, on the elapsedRealtime clock, or
+	 * -1 if none have yet.
+	 */
+	synchronized long lastResults() {
+		return lastResults;
+	}
+
+	/**
+	 * Fails one request, if it is still waiting. Used when its caller gives up
+	 * on it; a scan it started is left to finish.
+	 */
+	void withdraw(Request request, String message) {
+		boolean removed;
+
+		synchronized (this) {
+			removed = queued.remove(request) | waiting.remove(request);
+		}
+
+		if (removed) {
+			request.failed(message);
+		}
+	}
+
+	/**
+	 * Fails everything that is waiting. Used on shutdown.
+	 */
+	void cancelAll(String message) {
+		List<Request> failed;
+
+		synchronized (this) {
+			cancel(retry);
+			cancel(timeout);
+			failed = new ArrayList<Request>(queued);
+			failed.addAll(waiting);
+			queued.clear();
+			waiting.clear();
+		}
+
+		notify(new ArrayList<Request>(), failed, message);
+	}
+
+	/**
+	 * Starts a scan for the queued requests if there is one to start and the
+	 * budget allows it, otherwise schedules another try for when it does.
+	 */
+	private void drain(List<Request> ready, List<Request> failed) {
+		if (queued.isEmpty() || inFlight) {
+			return;
+		}
+
+		long now = SystemClock.elapsedRealtime();
+		while (!starts.isEmpty() && now - starts.getFirst() >= THROTTLE_WINDOW) {
+			starts.removeFirst();
+		}
+
+		if (starts.size() >= budget) {
+			if (retry == null || retry.isDone()) {
+				long delay = starts.getFirst() + THROTTLE_WINDOW - now;
+				retry = timer.schedule(new Runnable() {
+					public void run() {
+						retry();
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			}
+			return;
+		}
+
+		if (!wifiManager.startScan()) {
+			failed.addAll(queued);
+			queued.clear();
+			return;
+		}
+
+		inFlight = true;
+		starts.addLast(now);
+		for (Request request : queued) {
+			(request.waitForResults ? waiting : ready).add(request);
+		}
+		queued.clear();
+
+		timeout = timer.schedule(new Runnable() {
+			public void run() {
+				timedOut();
+			}
+		}, SCAN_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	private void retry() {
+		List<Request> ready = new ArrayList<Request>();
+		List<Request> failed = new ArrayList<Request>();
+
+		synchronized (this) {
+			drain(ready, failed);
+		}
+
+		notify(ready, failed, "Scan failed");
+	}
+
+	/**
+	 * The results of a scan never arrived. Gives up on it so the next request
+	 * can start a new one.
+	 */
+	private void timedOut() {
+		List<Request> failed;
+		List<Request> ready = new ArrayList<Request>();
+
+		synchronized (this) {
+			if (!inFlight) {
+				return;
+			}
+			inFlight = false;
+			failed = new ArrayList<Request>(waiting);
+			waiting.clear();
+			drain(ready, failed);
+		}
+
+		notify(ready, failed, "Scan timed out");
+	}
+
+	private static void cancel(ScheduledFuture<?> future) {
+		if (future != null) {
+			future.cancel(false);
+		}
+	}
+
+	private static void notify(List<Request> ready, List<Request> failed, String message) {
+		for (Request request : ready) {
+			request.ready();
+		}
+		for (Request request : failed) {
+			request.failed(message == null ? "Scan failed" : message);
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.net.wifi.ScanResult;
+
+/**
+ * The latest scan results, copied out of the ScanResult objects into parallel
+ * primitive arrays so nothing holds on to them after the scan is read. The
+ * arrays are reused from one scan to the next and only grow.
+ *
+ * BSSIDs are packed into the low 48 bits of a long, for lookups, and the
+ * string the platform reported is kept as well, for output. A BSSID that is
+ * not a MAC address packs to 0; anything keyed by BSSID skips those rows.
+ *
+ * SSIDs are interned in a table, so an SSID seen in every scan is kept once
+ * rather than once per scan. When the table grows past MAX_SSIDS, or twice
+ * the size of the scan, it is cut down to the SSIDs of the current scan.
+ *
+ * Rows are numbered from 0 to size() - 1, in the order the platform returned
+ * them. The store is not thread safe: callers lock on it from update until
+ * they are done reading the rows.
+ */
+class ScanStore {
+
+	static final int MAX_SSIDS = 256;
+
+	private static final int INITIAL_CAPACITY = 32;
+
+	private long[] bssids = new long[INITIAL_CAPACITY];
+	private String[] bssidTexts = new String[INITIAL_CAPACITY];
+	private int[] levels = new int[INITIAL_CAPACITY];
+	private short[] frequencies = new short[INITIAL_CAPACITY];
+	private int[] ssids = new int[INITIAL_CAPACITY];
+	private int size;
+
+	private final Map<String, Integer> ssidIds = new HashMap<String, Integer>();
+	private final List<String> ssidNames = new ArrayList<String>();
+
+	/**
+	 * Replaces the rows with the given scan results.
+	 */
+	void update(List<ScanResult> scanResults) {
+		int count = scanResults == null ? 0 : scanResults.size();
+
+		if (count > bssids.length) {
+			int capacity = Math.max(count, bssids.length * 2);
+			bssids = new long[capacity];
+			bssidTexts = new String[capacity];
+			levels = new int[capacity];
+			frequencies = new short[capacity];
+			ssids = new int[capacity];
+		}
+		for (int row = 0; row < count; row++) {
+			ScanResult scan = scanResults.get(row);
+			bssids[row] = packMac(scan.BSSID);
+			bssidTexts[row] = scan.BSSID;
+			levels[row] = scan.level;
+			frequencies[row] = (short) scan.frequency;
+			ssids[row] = intern(scan.SSID == null ? "" : scan.SSID);
+		}
+		for (int row = count; row < size; row++) {
+			bssidTexts[row] = null;
+		}
+		size = count;
+
+		if (ssidNames.size() > Math.max(MAX_SSIDS, count * 2)) {
+			compactSsids();
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns every row number, in order.
+	 */
+	int[] rows() {
+		int[] rows = new int[size];
+		for (int row = 0; row < size; row++) {
+			rows[row] = row;
+		}
+		return rows;
+	}
+
+	long bssid(int row) {
+		return bssids[row];
+	}
+
+	/**
+	 * Returns the BSSID as the platform reported it.
+	 */
+	String bssidText(int row) {
+		return bssidTexts[row];
+	}
+
+	int level(int row) {
+		return levels[row];
+	}
+
+	int frequency(int row) {
+		return frequencies[row] & 0xffff;
+	}
+
+	String ssid(int row) {
+		return ssidNames.get(ssids[row]);
+	}
+
+	private int intern(String ssid) {
+		Integer id = ssidIds.get(ssid);
+		if (id == null) {
+			id = ssidNames.size();
+			ssidNames.add(ssid);
+			ssidIds.put(ssid, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Rebuilds the SSID table from the current rows. The table is then at
+	 * most half the limit, so this runs at most once for every scan-sized
+	 * batch of new SSIDs.
+	 */
+	private void compactSsids() {
+		List<String> names = new ArrayList<String>(ssidNames);
+		ssidIds.clear();
+		ssidNames.clear();
+		for (int row = 0; row < size; row++) {
+			ssids[row] = intern(names.get(ssids[row]));
+		}
+	}
+
+	/**
+	 * Packs a MAC address into the low 48 bits of a long, or returns 0 if it
+	 * is not one.
+	 */
+	static long packMac(String text) {
+		byte[] mac = new byte[6];
+		ScanResultEncoder.parseMac(text, mac);
+		long packed = 0;
+		for (int i = 0; i < 6; i++) {
+			packed = packed << 8 | mac[i] & 0xff;
+		}
+		return packed;
+	}
+
+	/**
+	 * Formats a packed MAC address as six lower case hex pairs.
+	 */
+	static String formatMac(long mac) {
+		char[] text = new char[17];
+		for (int i = 0; i < 6; i++) {
+			int b = (int) (mac >>> (40 - i * 8)) & 0xff;
+			text[i * 3] = Character.forDigit(b >> 4, 16);
+			text[i * 3 + 1] = Character.forDigit(b & 0xf, 16);
+			if (i < 5) {
+				text[i * 3 + 2] = ':';
+			}
+		}
+		return new String(text);
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A fixed-size ring buffer of trace events, read back with dumpTrace.
+ *
+ * An event is a constant name, an optional subject (usually an SSID), an
+ * optional detail and an optional number. Callers pass strings they already
+ * have and never build one for the trace, so an event below the current level
+ * costs one comparison. The buffer is allocated up front and the oldest
+ * events are overwritten.
+ *
+ * Passwords and keys are never passed in: addNetwork records the SSID and
+ * auth type only.
+ */
+class Trace {
+
+	static final int OFF = 0;
+	static final int ERROR = 1;
+	static final int INFO = 2;
+	static final int DEBUG = 3;
+
+	private static final String[] LEVELS = { "off", "error", "info", "debug" };
+	private static final long NO_VALUE = Long.MIN_VALUE;
+
+	private final long[] times;
+	private final int[] levels;
+	private final String[] events;
+	private final String[] subjects;
+	private final String[] details;
+	private final long[] values;
+
+	private volatile int level = ERROR;
+	private long recorded;
+
+	Trace(int capacity) {
+		times = new long[capacity];
+		levels = new int[capacity];
+		events = new String[capacity];
+		subjects = new String[capacity];
+		details = new String[capacity];
+		values = new long[capacity];
+	}
+
+	/**
+	 * For the rare caller that has to build its detail: build it only when this
+	 * returns true.
+	 */
+	boolean isEnabled(int level) {
+		return this.level >= level;
+	}
+
+	void e(String event, String subject, String detail) {
+		if (level >= ERROR) {
+			record(ERROR, event, subject, detail, NO_VALUE);
+		}
+	}
+
+	void i(String event, String subject, String detail) {
+		if (level >= INFO) {
+			record(INFO, event, subject, detail, NO_VALUE);
+		}
+	}
+
+	void d(String event, String subject) {
+		if (level >= DEBUG) {
+			record(DEBUG, event, subject, null, NO_VALUE);
+		}
+	}
+
+	void d(String event, String subject, long value) {
+		if (level >= DEBUG) {
+			record(DEBUG, event, subject, null, value);
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the name is not one of off, error, info or debug
+	 */
+	void setLevel(String name) {
+		for (int i = 0; i < LEVELS.length; i++) {
+			if (LEVELS[i].equals(name)) {
+				level = i;
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Unknown trace level: " + name);
+	}
+
+	private synchronized void record(int level, String event, String subject, String detail, long value) {
+		int slot = (int) (recorded % times.length);
+		times[slot] = System.currentTimeMillis();
+		levels[slot] = level;
+		events[slot] = event;
+		subjects[slot] = subject;
+		details[slot] = detail;
+		values[slot] = value;
+		recorded++;
+	}
+
+	/**
+	 * @return {level, recorded, dropped, events: [{time, level, event,
+	 *         subject, detail, value}]}, oldest event first
+	 */
+	synchronized JSONObject toJSON() throws JSONException {
+		int count = (int) Math.min(recorded, times.length);
+		long first = recorded - count;
+
+		JSONArray list = new JSONArray();
+		for (long n = first; n < recorded; n++) {
+			int slot = (int) (n % times.length);
+			JSONObject json = new JSONObject();
+			json.put("time", times[slot]);
+			json.put("level", LEVELS[levels[slot]]);
+			json.put("event", events[slot]);
+			json.putOpt("subject", subjects[slot]);
+			json.putOpt("detail", details[slot]);
+			if (values[slot] != NO_VALUE) {
+				json.put("value", values[slot]);
+			}
+			list.put(json);
+		}
+
+		JSONObject trace = new JSONObject();
+		trace.put("level", LEVELS[level]);
+		trace.put("recorded", recorded);
+		trace.put("dropped", first);
+		trace.put("events", list);
+		return trace;
+	}
+
+	synchronized void clear() {
+		recorded = 0;
+		Arrays.fill(subjects, null);
+		Arrays.fill(details, null);
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 Matt Parsons
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.simplec.wifiwizard;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import android.net.wifi.WifiManager;
+
+/**
+ * The state of the wifi radio, as last reported by WIFI_STATE_CHANGED_ACTION.
+ *
+ * The broadcast is sticky, so it arrives as soon as the plugin registers for
+ * it; until then the state is read from WifiManager once. After that, asking
+ * whether wifi is enabled costs no call into the system.
+ *
+ * setEnabled only calls wifiManager.setWifiEnabled when the radio is not
+ * already in, or on its way to, the requested state. Callers can wait for the
+ * radio to reach a state; exactly one of reached or failed is called, never
+ * with the tracker locked, and the waiter's timeout is cancelled first.
+ */
+class WifiRadioState {
+
+	abstract static class Waiter {
+		final boolean enabled;
+		private ScheduledFuture<?> timeout;
+		private boolean finished;
+
+		Waiter(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		/** Sets the timeout to cancel when the wait ends, or cancels it if it has */
+		synchronized void setTimeout(ScheduledFuture<?> timeout) {
+			this.timeout = timeout;
+			if (finished) {
+				timeout.cancel(false);
+			}
+		}
+
+		private synchronized void finish() {
+			finished = true;
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+		}
+
+		abstract void reached();
+
+		abstract void failed(String message);
+	}
+
+	private final WifiManager wifiManager;
+	private final ActionMetrics metrics;
+	private final List<Waiter> waiters = new ArrayList<Waiter>();
+
+	/** One of the WifiManager.WIFI_STATE_ values, or -1 until known */
+	private int state = -1;
+
+	WifiRadioState(WifiManager wifiManager, ActionMetrics metrics) {
+		this.wifiManager = wifiManager;
+		this.metrics = metrics;
+	}
+
+	synchronized int state() {
+		if (state < 0) {
+			long start = metrics.start();
+			state = wifiManager.getWifiState();
+			metrics.binder(start);
+		}
+		return state;
+	}
+
+	boolean isEnabled() {
+		return state() == WifiManager.WIFI_STATE_ENABLED;
+	}
+
+	/**
+	 * Called for every WIFI_STATE_CHANGED_ACTION.
+	 */
+	void onStateChanged(int newState) {
+		List<Waiter> reached = new ArrayList<Waiter>();
+
+		synchronized (this) {
+			state = newState;
+			for (Iterator<Waiter> i = waiters.iterator(); i.hasNext();) {
+				Waiter waiter = i.next();
+				if (isIn(waiter.enabled)) {
+					reached.add(waiter);
+					i.remove();
+				}
+			}
+		}
+
+		for (Waiter waiter : reached) {
+			waiter.finish();
+			waiter.reached();
+		}
+	}
+
+	/**
+	 * Turns the radio on or off, unless it already is or is already getting
+	 * there.
+	 *
+	 * @return false if the platform refused
+	 */
+	boolean setEnabled(boolean enabled) {
+		int current = state();
+		if (enabled && (current == WifiManager.WIFI_STATE_ENABLED || current == WifiManager.WIFI_STATE_ENABLING)) {
+			return true;
+		}
+		if (!enabled && (current == WifiManager.WIFI_STATE_DISABLED || current == WifiManager.WIFI_STATE_DISABLING)) {
+			return true;
+		}
+
+		long start = metrics.start();
+		boolean accepted = wifiManager.setWifiEnabled(enabled);
+		metrics.binder(start);
+		return accepted;
+	}
+
+	/**
+	 * Calls the waiter back once the radio is enabled or disabled, as it asks,
+	 * or right away if it already is.
+	 */
+	void await(Waiter waiter) {
+		synchronized (this) {
+			if (!isIn(waiter.enabled)) {
+				waiters.add(waiter);
+				return;
+			}
+		}
+		waiter.finish();
+		waiter.reached();
+	}
+
+	/**
+	 * Fails one waiter, if it is still waiting.
+	 */
+	void withdraw(Waiter waiter, String message) {
+		boolean removed;
+		synchronized (this) {
+			removed = waiters.remove(waiter);
+		}
+		if (removed) {
+			waiter.finish();
+			waiter.failed(message);
+		}
+	}
+
+	/**
+	 * Fails every waiter. Used on shutdown.
+	 */
+	void cancelAll(String message) {
+		List<Waiter> failed;
+		synchronized (this) {
+			failed = new ArrayList<Waiter>(waiters);
+			waiters.clear();
+		}
+		for (Waiter waiter : failed) {
+			waiter.finish();
+			waiter.failed(message);
+		}
+	}
+
+	private boolean isIn(boolean enabled) {
+		int current = state();
+		return enabled ? current == WifiManager.WIFI_STATE_ENABLED : current == WifiManager.WIFI_STATE_DISABLED;
+	}
+}
@@ -14,82 +14,500 @@
  */
 package com.simplec.wifiwizard;
 
-import java.math.BigInteger;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.NetworkInfo;
 import android.net.wifi.ScanResult;
+import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
-import android.util.Log;
+import android.os.Build;
 
 public class WifiWizard extends CordovaPlugin {
 
 	private static final String ADD_NETWORK = "addNetwork";
+	private static final String IMPORT_NETWORKS = "importNetworks";
+	private static final String ENSURE_NETWORKS = "ensureNetworks";
 	private static final String REMOVE_NETWORK = "removeNetwork";
 	private static final String CONNECT_NETWORK = "connectNetwork";
+	private static final String CONNECT_BEST = "connectBest";
 	private static final String DISCONNECT_NETWORK = "disconnectNetwork";
 	private static final String DISCONNECT = "disconnect";
 	private static final String LIST_NETWORKS = "listNetworks";
 	private static final String START_SCAN = "startScan";
 	private static final String SIGNAL_STRENGTH = "wifiSignalStrength";
+	private static final String WATCH_SIGNAL_STRENGTH = "watchSignalStrength";
+	private static final String CLEAR_SIGNAL_WATCH = "clearSignalWatch";
 	private static final String GET_SCAN_RESULTS = "getScanResults";
+	private static final String WATCH_SCAN_RESULTS = "watchScanResults";
+	private static final String CLEAR_SCAN_WATCH = "clearScanWatch";
 	private static final String GET_CONNECTED_SSID = "getConnectedSSID";
 	private static final String IS_WIFI_ENABLED = "isWifiEnabled";
 	private static final String SET_WIFI_ENABLED = "setWifiEnabled";
-	private static final String TAG = "WifiWizard";
+	private static final String GET_METRICS = "getMetrics";
+	private static final String RESET_METRICS = "resetMetrics";
+	private static final String DUMP_TRACE = "dumpTrace";
+	private static final String SET_TRACE_LEVEL = "setTraceLevel";
+	private static final String CANCEL = "cancel";
+	private static final String PROBE_LINK = "probeLink";
+	private static final String START_SCAN_HISTORY = "startScanHistory";
+	private static final String STOP_SCAN_HISTORY = "stopScanHistory";
+	private static final String QUERY_SCAN_HISTORY = "queryScanHistory";
+	private static final String PIPELINE = "pipeline";
+	private static final String START_SCAN_STATS = "startScanStats";
+	private static final String STOP_SCAN_STATS = "stopScanStats";
+	private static final String GET_SCAN_STATS = "getScanStats";
+	private static final String ADD_TRIGGER = "addTrigger";
+	private static final String REMOVE_TRIGGER = "removeTrigger";
+	private static final String START_PERIODIC_SCAN = "startPeriodicScan";
+	private static final String STOP_PERIODIC_SCAN = "stopPeriodicScan";
+
+	/**
+	 * Cheap reads. These run on a small pool so a slow call never holds up
+	 * the others.
+	 */
+	private static final Set<String> FAST_ACTIONS = new HashSet<String>(Arrays.asList(IS_WIFI_ENABLED, SIGNAL_STRENGTH,
+			WATCH_SIGNAL_STRENGTH, CLEAR_SIGNAL_WATCH, GET_METRICS, RESET_METRICS, DUMP_TRACE, SET_TRACE_LEVEL, CANCEL,
+			GET_CONNECTED_SSID, GET_SCAN_RESULTS, WATCH_SCAN_RESULTS, CLEAR_SCAN_WATCH, LIST_NETWORKS, START_SCAN,
+			START_SCAN_HISTORY, STOP_SCAN_HISTORY, QUERY_SCAN_HISTORY, START_SCAN_STATS, STOP_SCAN_STATS,
+			GET_SCAN_STATS, ADD_TRIGGER, REMOVE_TRIGGER, START_PERIODIC_SCAN, STOP_PERIODIC_SCAN));
+
+	/**
+	 * Actions that change the configured networks or the connection. These run
+	 * one at a time, in the order they were received.
+	 */
+	private static final Set<String> SERIAL_ACTIONS = new HashSet<String>(Arrays.asList(ADD_NETWORK, IMPORT_NETWORKS, ENSURE_NETWORKS,
+			REMOVE_NETWORK,
+			CONNECT_NETWORK, CONNECT_BEST, DISCONNECT_NETWORK, DISCONNECT, SET_WIFI_ENABLED, PIPELINE));
+
+	/**
+	 * Actions that wait on the network rather than on WifiManager. They get
+	 * their own thread so they hold up neither of the other lanes.
+	 */
+	private static final Set<String> IO_ACTIONS = new HashSet<String>(Arrays.asList(PROBE_LINK));
+
+	/**
+	 * Actions a pipeline will not run: the watches and triggers never give a
+	 * final result, and pipelines do not nest.
+	 */
+	private static final Set<String> NOT_PIPELINED = new HashSet<String>(Arrays.asList(WATCH_SIGNAL_STRENGTH,
+			WATCH_SCAN_RESULTS, ADD_TRIGGER, START_PERIODIC_SCAN, PIPELINE));
+
+	private static final int FAST_POOL_SIZE = 2;
+	private static final long DEFAULT_CONNECT_TIMEOUT = 30000;
+	private static final long DEFAULT_RADIO_TIMEOUT = 10000;
+	private static final long DEFAULT_STEP_TIMEOUT = 60000;
+	private static final long MAX_STEP_TIMEOUT = 300000;
+	private static final int TRACE_CAPACITY = 256;
+	private static final List<String> LIST_FIELDS = Arrays.asList("networkId", "SSID", "hiddenSSID", "keyMgmt",
+			"status", "priority");
+	private static final String SCAN_HISTORY_FILE = "WifiWizard-scans.bin";
+	private static final String MANAGED_NETWORKS = "WifiWizard.managedNetworks";
+	private static final String FINGERPRINT_KEY_FILE = "WifiWizard-fingerprint.key";
+	private static final int DEFAULT_HISTORY_LIMIT = 1000;
+	private static final int MAX_DELTA_CLIENTS = 16;
 
 	private WifiManager wifiManager;
-	private CallbackContext callbackContext;
+	private ExecutorService fastExecutor;
+	private ExecutorService serialExecutor;
+	private ExecutorService ioExecutor;
+	private ScheduledExecutorService timer;
+	private ScanScheduler scanScheduler;
+	private ConfiguredNetworks configuredNetworks;
+	private WifiRadioState radio;
+	private final ActionMetrics metrics = new ActionMetrics();
+	private final Trace trace = new Trace(TRACE_CAPACITY);
+	/** getScanResults delta state by client id, least recently used first */
+	private final Map<String, ScanDeltaEncoder> scanDeltas = new LinkedHashMap<String, ScanDeltaEncoder>(16, 0.75f,
+			true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ScanDeltaEncoder> eldest) {
+			return size() > MAX_DELTA_CLIENTS;
+		}
+	};
+	private final ScanStore scanStore = new ScanStore();
+	private byte[] fingerprintKey;
+
+	private final Map<String, RequestContext> requests = new HashMap<String, RequestContext>();
+	private final Map<String, ScanWatch> scanWatches = new HashMap<String, ScanWatch>();
+	private volatile ScanHistory scanHistory;
+	private volatile BssidStats scanStats;
+	private final PresenceTriggers presenceTriggers = new PresenceTriggers();
+	private volatile AdaptiveScan periodicScan;
+
+	private final BroadcastReceiver scanResultsReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			try {
+				fastExecutor.execute(new Runnable() {
+					public void run() {
+						onScanResults();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				trace.d("scanResultsDropped", null);
+			}
+		}
+	};
+
+	private final Map<String, SignalWatch> signalWatches = new HashMap<String, SignalWatch>();
+
+	private final BroadcastReceiver rssiReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			int rssi = intent.getIntExtra(WifiManager.EXTRA_NEW_RSSI, RssiFilter.INVALID_RSSI);
+
+			synchronized (signalWatches) {
+				for (SignalWatch watch : signalWatches.values()) {
+					publishSignalStrength(watch, rssi);
+				}
+			}
+		}
+	};
+
+	private ConnectionAttempt connectionAttempt;
+
+	private final BroadcastReceiver connectionReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, final Intent intent) {
+			final ConnectionAttempt attempt;
+			synchronized (this) {
+				attempt = connectionAttempt;
+			}
+			if (attempt == null) {
+				return;
+			}
+
+			if (WifiManager.SUPPLICANT_STATE_CHANGED_ACTION.equals(intent.getAction())) {
+				SupplicantState state = intent.getParcelableExtra(WifiManager.EXTRA_NEW_STATE);
+				int error = intent.getIntExtra(WifiManager.EXTRA_SUPPLICANT_ERROR, 0);
+				attempt.onSupplicantState(state, error == WifiManager.ERROR_AUTHENTICATING);
+				return;
+			}
+
+			NetworkInfo info = intent.getParcelableExtra(WifiManager.EXTRA_NETWORK_INFO);
+			if (info != null && info.getState() == NetworkInfo.State.CONNECTED) {
+				// getConnectionInfo is a binder call, keep it off the main thread
+				fastExecutor.execute(new Runnable() {
+					public void run() {
+						attempt.onConnected(wifiManager.getConnectionInfo());
+					}
+				});
+			}
+		}
+	};
+
+	private final BroadcastReceiver configuredNetworksReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			configuredNetworks.invalidate();
+		}
+	};
+
+	private final BroadcastReceiver radioReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			radio.onStateChanged(intent.getIntExtra(WifiManager.EXTRA_WIFI_STATE, WifiManager.WIFI_STATE_UNKNOWN));
+		}
+	};
 
 	@Override
 	public void initialize(CordovaInterface cordova, CordovaWebView webView) {
-		Log.e(TAG, "WifiWizard: initialize.");
 		super.initialize(cordova, webView);
 		this.wifiManager = (WifiManager) cordova.getActivity().getSystemService(Context.WIFI_SERVICE);
+		this.fastExecutor = Executors.newFixedThreadPool(FAST_POOL_SIZE, new NamedThreadFactory("WifiWizard-fast"));
+		this.serialExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("WifiWizard-serial"));
+		this.ioExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("WifiWizard-io"));
+		this.timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("WifiWizard-timer"));
+		this.configuredNetworks = new ConfiguredNetworks(wifiManager, metrics);
+		this.scanScheduler = new ScanScheduler(wifiManager, timer);
+		this.radio = new WifiRadioState(wifiManager, metrics);
+
+		cordova.getActivity().registerReceiver(radioReceiver, new IntentFilter(WifiManager.WIFI_STATE_CHANGED_ACTION));
+
+		IntentFilter filter = new IntentFilter(WifiManager.NETWORK_IDS_CHANGED_ACTION);
+		filter.addAction(ConfiguredNetworks.CONFIGURED_NETWORKS_CHANGED_ACTION);
+		cordova.getActivity().registerReceiver(configuredNetworksReceiver, filter);
+		cordova.getActivity().registerReceiver(scanResultsReceiver,
+				new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
+	}
+
+	@Override
+	public void onReset() {
+		cancelRequests("The page was reset.");
+		clearScanWatches();
+		clearSignalWatches();
+		synchronized (scanDeltas) {
+			scanDeltas.clear();
+		}
+		super.onReset();
+	}
+
+	@Override
+	public void onDestroy() {
+		cancelRequests("WifiWizard is shutting down.");
+		clearScanWatches();
+		clearSignalWatches();
+		scanScheduler.cancelAll("WifiWizard is shutting down.");
+		radio.cancelAll("WifiWizard is shutting down.");
+		synchronized (connectionReceiver) {
+			if (connectionAttempt != null) {
+				connectionAttempt = null;
+				cordova.getActivity().unregisterReceiver(connectionReceiver);
+			}
+		}
+		cordova.getActivity().unregisterReceiver(configuredNetworksReceiver);
+		cordova.getActivity().unregisterReceiver(radioReceiver);
+		cordova.getActivity().unregisterReceiver(scanResultsReceiver);
+		closeScanHistory();
+		fastExecutor.shutdownNow();
+		serialExecutor.shutdownNow();
+		ioExecutor.shutdownNow();
+		timer.shutdownNow();
+		super.onDestroy();
 	}
 
+	/**
+	 * Hands the action off to its executor so the WebView bridge thread is
+	 * never blocked on WifiManager calls. The result is delivered later through
+	 * the call's own RequestContext.
+	 */
 	@Override
-	public boolean execute(String action, JSONArray data, CallbackContext callbackContext) throws JSONException {
+	public boolean execute(final String action, final JSONArray data, CallbackContext callbackContext)
+			throws JSONException {
+		ExecutorService executor = executorFor(action);
+
+		if (executor == null) {
+			callbackContext.error("Incorrect action parameter: " + action);
+			return false;
+		}
+
+		final RequestContext context = startRequest(data, callbackContext);
+		if (context == null) {
+			return true;
+		}
+
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					ActionMetrics.Span span = metrics.begin(action);
+					context.setSpan(span);
+					ActionMetrics.Span previous = metrics.enter(span);
+					try {
+						dispatch(action, data, context);
+					} catch (Exception e) {
+						context.error(e.getMessage());
+						trace.e(action, null, e.getMessage());
+					} finally {
+						metrics.exit(previous);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			context.error("WifiWizard is shutting down.");
+			return false;
+		}
+
+		return true;
+	}
 
-		this.callbackContext = callbackContext;
+	/**
+	 * Gives a call its own RequestContext and registers it for the cancel
+	 * action. The id and deadline come from the first options object in data
+	 * that has a requestId or a deadline (ms); the id defaults to the callback
+	 * id.
+	 *
+	 * @return the context, or null if the id is already in use, in which case
+	 *         the call has been answered
+	 */
+	private RequestContext startRequest(JSONArray data, CallbackContext callbackContext) {
+		JSONObject options = null;
+		for (int i = 0; data != null && i < data.length() && options == null; i++) {
+			JSONObject candidate = data.optJSONObject(i);
+			if (candidate != null && (candidate.has("requestId") || candidate.has("deadline"))) {
+				options = candidate;
+			}
+		}
+
+		final String id = options == null ? callbackContext.getCallbackId()
+				: options.optString("requestId", callbackContext.getCallbackId());
+		final RequestContext context = new RequestContext(id, callbackContext.getCallbackId(), webView) {
+			void done() {
+				synchronized (requests) {
+					if (requests.get(id) == this) {
+						requests.remove(id);
+					}
+				}
+			}
+		};
+
+		synchronized (requests) {
+			if (requests.containsKey(id)) {
+				callbackContext.error("Request " + id + " is already running.");
+				return null;
+			}
+			requests.put(id, context);
+		}
+
+		long deadline = options == null ? 0 : options.optLong("deadline", 0);
+		if (deadline > 0) {
+			context.setDeadline(timer.schedule(new Runnable() {
+				public void run() {
+					context.cancel("Deadline exceeded");
+				}
+			}, deadline, TimeUnit.MILLISECONDS));
+		}
+		return context;
+	}
 
-		if (action.equals(IS_WIFI_ENABLED)) {
+	/**
+	 * Cancels every request still running. The hooks stop the work; the
+	 * callbacks they answer may already be gone.
+	 */
+	private void cancelRequests(String reason) {
+		List<RequestContext> running;
+		synchronized (requests) {
+			running = new ArrayList<RequestContext>(requests.values());
+		}
+		for (RequestContext request : running) {
+			request.cancel(reason);
+		}
+	}
+
+	private ExecutorService executorFor(String action) {
+		if (SERIAL_ACTIONS.contains(action)) {
+			return serialExecutor;
+		} else if (FAST_ACTIONS.contains(action)) {
+			return fastExecutor;
+		} else if (IO_ACTIONS.contains(action)) {
+			return ioExecutor;
+		}
+		return null;
+	}
+
+	private boolean dispatch(String action, JSONArray data, RequestContext callbackContext) throws JSONException {
+
+		// cancelled while it was queued
+		if (callbackContext.isCancelled()) {
+			return false;
+		}
+
+		if (action.equals(CANCEL)) {
+			return this.cancel(callbackContext, data);
+		} else if (action.equals(PIPELINE)) {
+			return this.pipeline(callbackContext, data);
+		} else if (action.equals(GET_METRICS)) {
+			return this.getMetrics(callbackContext);
+		} else if (action.equals(RESET_METRICS)) {
+			metrics.reset();
+			callbackContext.success();
+			return true;
+		} else if (action.equals(DUMP_TRACE)) {
+			return this.dumpTrace(callbackContext, data);
+		} else if (action.equals(SET_TRACE_LEVEL)) {
+			return this.setTraceLevel(callbackContext, data);
+		} else if (action.equals(START_SCAN_HISTORY)) {
+			return this.startScanHistory(callbackContext, data);
+		} else if (action.equals(STOP_SCAN_HISTORY)) {
+			return this.stopScanHistory(callbackContext, data);
+		} else if (action.equals(QUERY_SCAN_HISTORY)) {
+			return this.queryScanHistory(callbackContext, data);
+		} else if (action.equals(START_SCAN_STATS)) {
+			return this.startScanStats(callbackContext, data);
+		} else if (action.equals(STOP_SCAN_STATS)) {
+			scanStats = null;
+			callbackContext.success();
+			return true;
+		} else if (action.equals(GET_SCAN_STATS)) {
+			return this.getScanStats(callbackContext, data);
+		} else if (action.equals(ADD_TRIGGER)) {
+			return this.addTrigger(callbackContext, data);
+		} else if (action.equals(REMOVE_TRIGGER)) {
+			return this.removeTrigger(callbackContext, data);
+		} else if (action.equals(STOP_PERIODIC_SCAN)) {
+			stopPeriodicScan(null);
+			callbackContext.success();
+			return true;
+		} else if (action.equals(IS_WIFI_ENABLED)) {
 			return this.isWifiEnabled(callbackContext);
 		} else if (action.equals(SIGNAL_STRENGTH)) {
 			return this.getWifiSignalStrength(callbackContext);
+		} else if (action.equals(WATCH_SIGNAL_STRENGTH)) {
+			return this.watchSignalStrength(callbackContext, data);
+		} else if (action.equals(CLEAR_SIGNAL_WATCH)) {
+			return this.clearSignalWatch(callbackContext, data);
 		} else if (action.equals(SET_WIFI_ENABLED)) {
 			return this.setWifiEnabled(callbackContext, data);
-		} else if (!wifiManager.isWifiEnabled()) {
+		} else if (!radio.isEnabled()) {
 			callbackContext.error("Wifi is not enabled.");
 			return false;
 		} else if (action.equals(ADD_NETWORK)) {
 			return this.addNetwork(callbackContext, data);
+		} else if (action.equals(IMPORT_NETWORKS)) {
+			return this.importNetworks(callbackContext, data);
+		} else if (action.equals(ENSURE_NETWORKS)) {
+			return this.ensureNetworks(callbackContext, data);
 		} else if (action.equals(REMOVE_NETWORK)) {
 			return this.removeNetwork(callbackContext, data);
 		} else if (action.equals(CONNECT_NETWORK)) {
 			return this.connectNetwork(callbackContext, data);
+		} else if (action.equals(CONNECT_BEST)) {
+			return this.connectBest(callbackContext, data);
 		} else if (action.equals(DISCONNECT_NETWORK)) {
 			return this.disconnectNetwork(callbackContext, data);
 		} else if (action.equals(LIST_NETWORKS)) {
-			return this.listNetworks(callbackContext);
+			return this.listNetworks(callbackContext, data);
+		} else if (action.equals(START_PERIODIC_SCAN)) {
+			return this.startPeriodicScan(callbackContext, data);
 		} else if (action.equals(START_SCAN)) {
-			return this.startScan(callbackContext);
+			return this.startScan(callbackContext, data);
 		} else if (action.equals(GET_SCAN_RESULTS)) {
 			return this.getScanResults(callbackContext, data);
+		} else if (action.equals(WATCH_SCAN_RESULTS)) {
+			return this.watchScanResults(callbackContext, data);
+		} else if (action.equals(CLEAR_SCAN_WATCH)) {
+			return this.clearScanWatch(callbackContext, data);
 		} else if (action.equals(DISCONNECT)) {
 			return this.disconnect(callbackContext);
 		} else if (action.equals(GET_CONNECTED_SSID)) {
 			return this.getConnectedSSID(callbackContext);
+		} else if (action.equals(PROBE_LINK)) {
+			return this.probeLink(callbackContext, data);
 		} else {
 			callbackContext.error("Incorrect action parameter: " + action);
 		}
@@ -107,7 +525,6 @@ public class WifiWizard extends CordovaPlugin {
 	 */
 	private boolean addNetwork(CallbackContext callbackContext, JSONArray data) {
 		// Initialize the WifiConfiguration object
-		Log.d(TAG, "WifiWizard: addNetwork entered.");
 
 		try {
 			// data's order for ANY object is 0: ssid, 1: authentication
@@ -115,565 +532,2219 @@ public class WifiWizard extends CordovaPlugin {
 			// 2+: authentication information.
 			String newSSID = data.getString(0); // needs to be in quotes
 			String authType = data.getString(1);
-			String newPass = data.getString(2);
+			String newPass = data.optString(2, "");
 			boolean isHidden = data.length() > 3 ? data.getBoolean(3) : false;
 
-			Log.e(TAG, "AddNetwork:  " + authType + " " + newSSID + "  " + newPass);
-
-			if (authType.equals("WPA")) {
-				WifiConfiguration wifi = new WifiConfiguration();
-
-				wifi.SSID = newSSID;
-				wifi.preSharedKey = newPass;
-				wifi.hiddenSSID = isHidden;
-
-				wifi.status = WifiConfiguration.Status.ENABLED;
-				wifi.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.TKIP);
-				wifi.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.CCMP);
-				wifi.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_PSK);
-				wifi.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.TKIP);
-				wifi.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.CCMP);
-				wifi.allowedProtocols.set(WifiConfiguration.Protocol.RSN);
-
-				boolean res1 = wifiManager.setWifiEnabled(true);
-				wifi.networkId = ssidToNetworkId(newSSID);
-				int res = 0;
-				if (wifi.networkId == -1) {
-					res = wifiManager.addNetwork(wifi);
-					Log.e(TAG, newSSID + " successfully add returned " + res);
-				} else {
-					res = wifiManager.updateNetwork(wifi);
-					Log.e(TAG, newSSID + " successfully update returned " + res);
-				}
-				if (res < 0) {
-					callbackContext.error(newSSID + " was not added.");
-				} else {
-					boolean es = wifiManager.saveConfiguration();
-					Log.d("WifiPreference", "saveConfiguration returned " + es);
-					boolean b = wifiManager.enableNetwork(res, false);
-					Log.d("WifiPreference", "enableNetwork returned " + b);
-
-					if (b) {
-						callbackContext.success(newSSID + " successfully added.");
-					} else {
-						callbackContext.error(newSSID + " failed to be added.");
-					}
-				}
+			trace.i("addNetwork", newSSID, authType);
 
-				wifiManager.saveConfiguration();
+			WifiConfiguration wifi = buildConfiguration(newSSID, authType, newPass, isHidden);
+
+			int res = saveNetwork(wifi);
+			if (res < 0) {
+				callbackContext.error(newSSID + " was not added.");
 				return true;
-			} else if (authType.equals("WEP")) {
-				WifiConfiguration wifi = new WifiConfiguration();
-				wifi.SSID = newSSID; // IMP! This should be in Quotes!!
-				wifi.hiddenSSID = isHidden;
-				wifi.status = WifiConfiguration.Status.ENABLED;
-
-				wifi.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.WEP40);
-				wifi.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.WEP104);
-				wifi.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
-				wifi.wepTxKeyIndex = 0;
-				
-				if (newPass.length()==5 || newPass.length()==13) {
-					newPass = String.format("%040x", new BigInteger(1, newPass.getBytes(/*YOUR_CHARSET?*/)));
-					Log.i("WifiPreference", "wep key converted to " + newPass);
-				} 
-				
-				if (newPass.length()!=10 && newPass.length()!=13) {
-					callbackContext.error(newSSID + " failed to be added.  Invalid key.");
-				}
+			}
 
-				wifi.wepKeys[0] = newPass; // This is the WEP Password
-				wifi.wepTxKeyIndex = 0;
+			long start = metrics.start();
+			boolean es = wifiManager.saveConfiguration();
+			trace.d("saveConfiguration", null, es ? 1 : 0);
+			boolean b = wifiManager.enableNetwork(res, false);
+			metrics.binder(start);
+			trace.d("enableNetwork", newSSID, b ? 1 : 0);
 
-				boolean res1 = wifiManager.setWifiEnabled(true);
-				wifi.networkId = ssidToNetworkId(newSSID);
-				int res = 0;
-				if (wifi.networkId == -1) {
-					res = wifiManager.addNetwork(wifi);
-					Log.e(TAG, newSSID + " successfully add returned " + res);
-				} else {
-					res = wifiManager.updateNetwork(wifi);
-					Log.e(TAG, newSSID + " successfully update returned " + res);
+			if (b) {
+				callbackContext.success(newSSID + " successfully added.");
+			} else {
+				callbackContext.error(newSSID + " failed to be added.");
+			}
+			return true;
+		} catch (Exception e) {
+			callbackContext.error(e.getMessage());
+			trace.e("addNetwork", null, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * This method adds or updates every network listed in a JSON-lines or CSV
+	 * file, see NetworkFileReader for the formats. The file is read one entry
+	 * at a time and the configuration is saved once at the end.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSON Array, with [0] being the file path, absolute or relative
+	 *            to the app's files directory, and [1] an optional JSONObject
+	 *            with format ("jsonl" or "csv") and enable (default true)
+	 * @return true if the file was read, false if it could not be
+	 */
+	private boolean importNetworks(final RequestContext callbackContext, JSONArray data) {
+		trace.d("importNetworks", null);
+
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: importNetworks data invalid");
+			trace.e("importNetworks", null, "invalid data");
+			return false;
+		}
+
+		JSONObject options = data.optJSONObject(1);
+		String format = options == null ? null : options.optString("format", null);
+		boolean enable = options == null || options.optBoolean("enable", true);
+
+		int added = 0;
+		int updated = 0;
+		int failed = 0;
+		JSONArray results = new JSONArray();
+		NetworkFileReader reader = null;
+
+		try {
+			reader = new NetworkFileReader(resolveFile(data.getString(0)), format);
+
+			NetworkFileReader.Entry entry;
+			while ((entry = reader.next()) != null) {
+				if (callbackContext.isCancelled()) {
+					abortImport(callbackContext, callbackContext.cancelReason(), added + updated > 0);
+					return false;
 				}
-				if (res < 0) {
-					callbackContext.error(newSSID + " was not added.");
-				} else {
-					boolean es = wifiManager.saveConfiguration();
-					Log.d("WifiPreference", "saveConfiguration returned " + es);
-					boolean b = wifiManager.enableNetwork(res, false);
-					Log.d("WifiPreference", "enableNetwork returned " + b);
-
-					if (b) {
-						callbackContext.success(newSSID + " successfully added.");
-					} else {
-						callbackContext.error(newSSID + " failed to be added.");
+
+				JSONObject result = new JSONObject();
+				result.put("line", entry.line);
+				result.put("SSID", entry.ssid);
+
+				String error = entry.error;
+				if (error == null) {
+					try {
+						WifiConfiguration wifi = buildConfiguration(entry.ssid, entry.authType, entry.password,
+								entry.hidden);
+						boolean isNew = wifi.networkId == -1;
+						int res = saveNetwork(wifi);
+						if (res < 0) {
+							error = entry.ssid + " was not added.";
+						} else {
+							if (enable) {
+								wifiManager.enableNetwork(res, false);
+							}
+							if (isNew) {
+								added++;
+							} else {
+								updated++;
+							}
+							result.put("status", isNew ? "added" : "updated");
+							result.put("networkId", res);
+						}
+					} catch (IllegalArgumentException e) {
+						error = e.getMessage();
 					}
 				}
 
-				return true;
-			} else if (authType.equals("EAP")) {/*
-												 * WifiEnterpriseConfig
-												 * enterpriseConfig = new
-												 * WifiEnterpriseConfig();
-												 * WifiConfiguration wifi = new
-												 * WifiConfiguration(); wifi =
-												 * new WifiConfiguration();
-												 * wifi.SSID = newSSID;
-												 * wifi.hiddenSSID = isHidden;
-												 * wifi
-												 * .allowedKeyManagement.set(
-												 * KeyMgmt.WPA_EAP);
-												 * wifi.allowedKeyManagement
-												 * .set(KeyMgmt.IEEE8021X);
-												 * 
-												 * if (newPass.indexOf("/")<0) {
-												 * callbackContext.error(newSSID
-												 * +
-												 * " could not be added. EAP requires username/password format in the password field."
-												 * ); }
-												 * 
-												 * String userName =
-												 * newPass.substring(0,
-												 * newPass.indexOf("/")); String
-												 * passWord =
-												 * newPass.substring(newPass
-												 * .indexOf("/")+1);
-												 * enterpriseConfig
-												 * .setIdentity(userName);
-												 * enterpriseConfig
-												 * .setPassword(passWord);
-												 * enterpriseConfig
-												 * .setEapMethod(
-												 * WifiEnterpriseConfig
-												 * .Eap.PEAP);
-												 * 
-												 * wifi.enterpriseConfig =
-												 * enterpriseConfig;
-												 * 
-												 * boolean res1 =
-												 * wifiManager.setWifiEnabled
-												 * (true); wifi.networkId =
-												 * ssidToNetworkId(newSSID); int
-												 * res = 0; if (wifi.networkId
-												 * == -1) { res =
-												 * wifiManager.addNetwork(wifi);
-												 * Log.e(TAG, newSSID +
-												 * " successfully add returned "
-												 * +res); } else { res =
-												 * wifiManager
-												 * .updateNetwork(wifi);
-												 * Log.e(TAG, newSSID +
-												 * " successfully update returned "
-												 * +res); } if (res<0) {
-												 * callbackContext.error(newSSID
-												 * + " was not added."); } else
-												 * { boolean es =
-												 * wifiManager.saveConfiguration
-												 * (); Log.d("WifiPreference",
-												 * "saveConfiguration returned "
-												 * + es); boolean b =
-												 * wifiManager
-												 * .enableNetwork(res, true);
-												 * Log.d("WifiPreference",
-												 * "enableNetwork returned " +
-												 * b);
-												 * 
-												 * if (b) {
-												 * callbackContext.success
-												 * (newSSID +
-												 * " successfully added."); }
-												 * else {
-												 * callbackContext.error(newSSID
-												 * + " failed to be added."); }
-												 * }
-												 * 
-												 * return true;
-												 */
-				return false;
-			} else if (authType.equals("NONE")) {
-				WifiConfiguration wifi = new WifiConfiguration();
-
-				wifi.SSID = newSSID;
-				wifi.hiddenSSID = isHidden;
-				wifi.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
-				boolean res1 = wifiManager.setWifiEnabled(true);
-				wifi.networkId = ssidToNetworkId(newSSID);
-				int res = 0;
-				if (wifi.networkId == -1) {
-					res = wifiManager.addNetwork(wifi);
-					Log.e(TAG, newSSID + " successfully add returned " + res);
-				} else {
-					res = wifiManager.updateNetwork(wifi);
-					Log.e(TAG, newSSID + " successfully update returned " + res);
+				if (error != null) {
+					failed++;
+					result.put("status", "failed");
+					result.put("error", error);
+				}
+				results.put(result);
+			}
+		} catch (IOException e) {
+			abortImport(callbackContext, "Unable to read networks: " + e.getMessage(), added + updated > 0);
+			return false;
+		} catch (JSONException e) {
+			abortImport(callbackContext, e.getMessage(), added + updated > 0);
+			return false;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					trace.e("importNetworks", null, e.getMessage());
 				}
+			}
+		}
+
+		long start = metrics.start();
+		boolean saved = wifiManager.saveConfiguration();
+		metrics.binder(start);
+		trace.d("saveConfiguration", null, saved ? 1 : 0);
+
+		try {
+			JSONObject summary = new JSONObject();
+			summary.put("added", added);
+			summary.put("updated", updated);
+			summary.put("failed", failed);
+			summary.put("saved", saved);
+			summary.put("results", results);
+			callbackContext.success(summary);
+		} catch (JSONException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reports an import that stopped part way, saving whatever was applied
+	 * before it did.
+	 */
+	private void abortImport(CallbackContext callbackContext, String message, boolean save) {
+		if (save) {
+			wifiManager.saveConfiguration();
+		}
+		callbackContext.error(message);
+		trace.e("importNetworks", null, message);
+	}
+
+	/**
+	 * The key of the ensureNetworks fingerprints, created on first use. It is
+	 * kept in the no-backup directory where there is one, so it does not leave
+	 * the device with the fingerprints.
+	 */
+	private synchronized byte[] fingerprintKey() throws IOException {
+		if (fingerprintKey == null) {
+			Context context = cordova.getActivity();
+			File dir = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? context.getNoBackupFilesDir()
+					: context.getFilesDir();
+			fingerprintKey = NetworkSetDiff.loadKey(new File(dir, FINGERPRINT_KEY_FILE));
+		}
+		return fingerprintKey;
+	}
+
+	/**
+	 * This method makes the configured networks match a desired set, with as
+	 * few changes as NetworkSetDiff finds, and saves the configuration once.
+	 * The credential fingerprints of the networks it writes are kept in
+	 * SharedPreferences. When nothing has changed it costs one read of the
+	 * configured networks, which is usually cached.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == array of networks, each as read by
+	 *            NetworkFileReader.parse, and [1] == optional JSONObject with
+	 *            prune ("managed", the default, "all" or "none") and enable
+	 *            (default true)
+	 * @return true if the set was applied
+	 */
+	private boolean ensureNetworks(RequestContext callbackContext, JSONArray data) throws JSONException {
+		JSONArray desiredList = data.optJSONArray(0);
+		if (desiredList == null) {
+			callbackContext.error("WifiWizard: ensureNetworks data invalid");
+			trace.e("ensureNetworks", null, "invalid data");
+			return false;
+		}
+
+		JSONObject options = data.optJSONObject(1);
+		if (options == null) {
+			options = new JSONObject();
+		}
+		boolean enable = options.optBoolean("enable", true);
+
+		JSONArray failed = new JSONArray();
+		List<NetworkFileReader.Entry> desired = new ArrayList<NetworkFileReader.Entry>(desiredList.length());
+		for (int i = 0; i < desiredList.length(); i++) {
+			JSONObject json = desiredList.optJSONObject(i);
+			NetworkFileReader.Entry entry = NetworkFileReader.parse(json == null ? new JSONObject() : json);
+			if (entry.error == null) {
+				desired.add(entry);
+			} else {
+				failed.put(new JSONObject().put("index", i).put("error", entry.error));
+			}
+		}
+
+		List<WifiConfiguration> configured = configuredNetworks.networks();
+		if (configured == null) {
+			callbackContext.error("Could not read the configured networks.");
+			return false;
+		}
+
+		byte[] key;
+		try {
+			key = fingerprintKey();
+		} catch (IOException e) {
+			callbackContext.error(e.getMessage());
+			trace.e("ensureNetworks", null, e.getMessage());
+			return false;
+		}
+
+		SharedPreferences fingerprints = cordova.getActivity().getSharedPreferences(MANAGED_NETWORKS,
+				Context.MODE_PRIVATE);
+		NetworkSetDiff diff;
+		try {
+			diff = new NetworkSetDiff(desired, configured, fingerprints.getAll(), key,
+					options.optString("prune", NetworkSetDiff.PRUNE_MANAGED));
+		} catch (IllegalArgumentException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+
+		SharedPreferences.Editor editor = fingerprints.edit();
+		JSONArray added = new JSONArray();
+		JSONArray updated = new JSONArray();
+		JSONArray removed = new JSONArray();
+
+		List<NetworkFileReader.Entry> writes = new ArrayList<NetworkFileReader.Entry>(diff.add);
+		writes.addAll(diff.update);
+		for (NetworkFileReader.Entry entry : writes) {
+			if (callbackContext.isCancelled()) {
+				break;
+			}
+			try {
+				WifiConfiguration wifi = buildConfiguration(entry.ssid, entry.authType, entry.password, entry.hidden);
+				boolean isNew = wifi.networkId == -1;
+				int res = saveNetwork(wifi);
 				if (res < 0) {
-					callbackContext.error(newSSID + " was not added.");
-				} else {
-					boolean es = wifiManager.saveConfiguration();
-					Log.d("WifiPreference", "saveConfiguration returned " + es);
-					boolean b = wifiManager.enableNetwork(res, false);
-					Log.d("WifiPreference", "enableNetwork returned " + b);
-
-					if (b) {
-						callbackContext.success(newSSID + " successfully added.");
-					} else {
-						callbackContext.error(newSSID + " failed to be added.");
-					}
+					failed.put(new JSONObject().put("SSID", entry.ssid).put("error", entry.ssid + " was not added."));
+					continue;
 				}
+				if (enable) {
+					wifiManager.enableNetwork(res, false);
+				}
+				editor.putString(entry.ssid, NetworkSetDiff.fingerprint(key, entry));
+				(isNew ? added : updated).put(entry.ssid);
+			} catch (IllegalArgumentException e) {
+				failed.put(new JSONObject().put("SSID", entry.ssid).put("error", e.getMessage()));
+			}
+		}
+
+		for (WifiConfiguration network : diff.remove) {
+			if (callbackContext.isCancelled()) {
+				break;
+			}
+			long start = metrics.start();
+			boolean ok = wifiManager.removeNetwork(network.networkId);
+			metrics.binder(start);
+			if (ok) {
+				configuredNetworks.remove(network.SSID);
+				editor.remove(network.SSID);
+				removed.put(network.SSID);
+			} else {
+				failed.put(new JSONObject().put("SSID", network.SSID).put("error", network.SSID + " was not removed."));
+			}
+		}
+
+		for (String ssid : diff.forget) {
+			editor.remove(ssid);
+		}
+
+		boolean saved = false;
+		if (added.length() + updated.length() + removed.length() > 0) {
+			long start = metrics.start();
+			saved = wifiManager.saveConfiguration();
+			metrics.binder(start);
+			trace.d("saveConfiguration", null, saved ? 1 : 0);
+		}
+		if (!diff.isEmpty() || !diff.forget.isEmpty()) {
+			editor.commit();
+		}
+		if (trace.isEnabled(Trace.INFO)) {
+			trace.i("ensureNetworks", null, "+" + added.length() + " ~" + updated.length() + " -" + removed.length());
+		}
+
+		JSONObject changes = new JSONObject();
+		changes.put("added", added);
+		changes.put("updated", updated);
+		changes.put("removed", removed);
+		changes.put("unchanged", diff.unchanged);
+		changes.put("failed", failed);
+		changes.put("saved", saved);
+		callbackContext.success(changes);
+		return true;
+	}
+
+	private File resolveFile(String path) {
+		if (path.startsWith("file://")) {
+			path = path.substring("file://".length());
+		}
+		File file = new File(path);
+		if (!file.isAbsolute()) {
+			file = new File(cordova.getActivity().getFilesDir(), path);
+		}
+		return file;
+	}
+
+	/**
+	 * This method builds the WifiConfiguration for a network. It is shared by
+	 * addNetwork and importNetworks.
+	 *
+	 * @param ssid
+	 *            the SSID, in quotes
+	 * @param authType
+	 *            WPA, WEP or NONE
+	 * @param password
+	 *            the password, ignored for NONE
+	 * @param isHidden
+	 *            true if the network does not broadcast its SSID
+	 * @return the configuration, with networkId set if the SSID is already
+	 *         configured
+	 * @throws IllegalArgumentException
+	 *             if the auth type is not supported or the key is invalid
+	 */
+	private WifiConfiguration buildConfiguration(String ssid, String authType, String password, boolean isHidden) {
+		WifiConfiguration wifi = new WifiConfiguration();
+		wifi.SSID = ssid; // IMP! This should be in Quotes!!
+		wifi.hiddenSSID = isHidden;
+
+		if (authType.equals("WPA")) {
+			wifi.preSharedKey = password;
+
+			wifi.status = WifiConfiguration.Status.ENABLED;
+			wifi.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.TKIP);
+			wifi.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.CCMP);
+			wifi.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_PSK);
+			wifi.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.TKIP);
+			wifi.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.CCMP);
+			wifi.allowedProtocols.set(WifiConfiguration.Protocol.RSN);
+		} else if (authType.equals("WEP")) {
+			wifi.status = WifiConfiguration.Status.ENABLED;
+
+			wifi.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.WEP40);
+			wifi.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.WEP104);
+			wifi.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
+
+			// 5 or 13 ASCII characters, or 10 or 26 hex digits
+			int length = password.length();
+			if ((length == 5 || length == 13) && isAscii(password)) {
+				password = toHex(password);
+				trace.d("wepKeyConverted", ssid);
+			} else if ((length != 10 && length != 26) || !isHex(password)) {
+				throw new IllegalArgumentException(ssid + " failed to be added.  Invalid key.");
+			}
+
+			wifi.wepKeys[0] = password; // This is the WEP Password
+			wifi.wepTxKeyIndex = 0;
+		} else if (authType.equals("NONE")) {
+			wifi.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
+		}
+		// TODO: Add more authentications as necessary. EAP needs
+		// WifiEnterpriseConfig, which is not available on android-17.
+		else {
+			trace.e("authTypeNotSupported", ssid, authType);
+			throw new IllegalArgumentException("Wifi Authentication Type Not Supported: " + authType);
+		}
+
+		wifi.networkId = ssidToNetworkId(ssid);
+		return wifi;
+	}
+
+	private static boolean isAscii(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) < 0x20 || text.charAt(i) > 0x7e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isHex(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if ((c < '0' || c > '9') && (c < 'a' || c > 'f') && (c < 'A' || c > 'F')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Two hex digits per character; the caller checked it is ASCII */
+	private static String toHex(String text) {
+		StringBuilder hex = new StringBuilder(text.length() * 2);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			hex.append(Character.forDigit((c >> 4) & 0xf, 16)).append(Character.forDigit(c & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * This method adds the network if it is new and updates it otherwise. The
+	 * configuration is not saved.
+	 *
+	 * @return the networkId, or a negative value if WifiManager refused it
+	 */
+	private int saveNetwork(WifiConfiguration wifi) {
+		int res;
+		long start = metrics.start();
+		if (wifi.networkId == -1) {
+			res = wifiManager.addNetwork(wifi);
+			metrics.binder(start);
+			trace.d("addNetwork", wifi.SSID, res);
+		} else {
+			res = wifiManager.updateNetwork(wifi);
+			metrics.binder(start);
+			trace.d("updateNetwork", wifi.SSID, res);
+		}
+		if (res >= 0) {
+			configuredNetworks.put(wifi.SSID, res);
+		}
+		return res;
+	}
+
+	/**
+	 * This method removes a network from the list of configured networks.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSON Array, with [0] being SSID to remove
+	 * @return true if network removed, false if failed
+	 */
+	private boolean removeNetwork(CallbackContext callbackContext, JSONArray data) {
+		trace.d("removeNetwork", null);
+
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: removeNetwork data invalid");
+			trace.e("removeNetwork", null, "invalid data");
+			return false;
+		}
+
+		// TODO: Verify the type of data!
+		try {
+			String ssidToDisconnect = data.getString(0);
+
+			int networkIdToRemove = ssidToNetworkId(ssidToDisconnect);
+
+			if (networkIdToRemove >= 0) {
+				long start = metrics.start();
+				wifiManager.removeNetwork(networkIdToRemove);
+				configuredNetworks.remove(ssidToDisconnect);
+				wifiManager.saveConfiguration();
+				metrics.binder(start);
+				callbackContext.success("Network removed.");
+				return true;
+			} else {
+				callbackContext.error("Network not found.");
+				trace.e("removeNetwork", ssidToDisconnect, "not found");
+				return false;
+			}
+		} catch (Exception e) {
+			callbackContext.error(e.getMessage());
+			trace.e("removeNetwork", null, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * This method connects a network. By default it reports success as soon as
+	 * the network is enabled. With the await option it reports once the
+	 * network is connected and has an IP address, with the time each phase
+	 * took, or fails on authentication error or timeout.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSON Array, with [0] being SSID to connect and [1] an optional
+	 *            JSONObject with await (boolean) and timeout (ms)
+	 * @return true if network connected, false if failed
+	 */
+	private boolean connectNetwork(final RequestContext callbackContext, JSONArray data) {
+		trace.d("connectNetwork", null);
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: connectNetwork invalid data");
+			trace.e("connectNetwork", null, "invalid data");
+			return false;
+		}
+		String ssidToConnect = "";
+
+		try {
+			ssidToConnect = data.getString(0);
+		} catch (Exception e) {
+			callbackContext.error(e.getMessage());
+			trace.e("connectNetwork", null, e.getMessage());
+			return false;
+		}
+
+		int networkIdToConnect = ssidToNetworkId(ssidToConnect);
+
+		if (networkIdToConnect >= 0) {
+			JSONObject options = data.optJSONObject(1);
+			if (options != null && options.optBoolean("await", false)) {
+				awaitConnection(callbackContext, ssidToConnect, networkIdToConnect,
+						options.optLong("timeout", DEFAULT_CONNECT_TIMEOUT), null);
+			}
+
+			enableNetwork(networkIdToConnect);
+
+			if (options == null || !options.optBoolean("await", false)) {
+				callbackContext.success("Network " + ssidToConnect + " connected!");
+			}
+			return true;
+		} else {
+			callbackContext.error("Network " + ssidToConnect + " not found!");
+			trace.e("connectNetwork", ssidToConnect, "not found");
+			return false;
+		}
+	}
+
+	/**
+	 * This method connects the best configured network in range of the latest
+	 * scan, as ranked by NetworkSelector, unless that is the current network.
+	 * It reports the network picked and every candidate. With the await
+	 * option it reports once connected, as connectNetwork does, with the
+	 * network picked under selected.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSON Array, with [0] an optional JSONObject with the
+	 *            NetworkSelector options, await (boolean) and timeout (ms)
+	 * @return true if a network was picked
+	 */
+	private boolean connectBest(final RequestContext callbackContext, JSONArray data) {
+		JSONObject options = data.optJSONObject(0);
+		if (options == null) {
+			options = new JSONObject();
+		}
+		NetworkSelector selector = new NetworkSelector(options);
+
+		List<WifiConfiguration> networks = configuredNetworks.networks();
+		long start = metrics.start();
+		List<ScanResult> scanResults = wifiManager.getScanResults();
+		int currentNetworkId = wifiManager.getConnectionInfo().getNetworkId();
+		metrics.binder(start);
+
+		if (networks == null) {
+			callbackContext.error("Could not read the configured networks.");
+			trace.e("connectBest", null, "no configured networks");
+			return false;
+		}
+
+		List<NetworkSelector.Candidate> candidates;
+		synchronized (scanStore) {
+			scanStore.update(scanResults);
+			candidates = selector.rank(scanStore, networks, currentNetworkId);
+		}
+
+		if (candidates.isEmpty()) {
+			callbackContext.error("No configured network in range.");
+			trace.i("connectBest", null, "none in range");
+			return false;
+		}
+
+		NetworkSelector.Candidate best = candidates.get(0);
+		JSONObject selected;
+		try {
+			selected = best.toJSON();
+			JSONArray ranked = new JSONArray();
+			for (NetworkSelector.Candidate candidate : candidates) {
+				ranked.put(candidate.toJSON());
+			}
+			selected.put("candidates", ranked);
+		} catch (JSONException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+
+		trace.i("connectBest", best.ssid, best.current ? "current" : "switch");
+		if (best.current) {
+			callbackContext.success(selected);
+			return true;
+		}
+
+		boolean await = options.optBoolean("await", false);
+		if (await) {
+			awaitConnection(callbackContext, best.ssid, best.networkId,
+					options.optLong("timeout", DEFAULT_CONNECT_TIMEOUT), selected);
+		}
+
+		enableNetwork(best.networkId);
+
+		if (!await) {
+			callbackContext.success(selected);
+		}
+		return true;
+	}
+
+	private void enableNetwork(int networkId) {
+		// We disable the network before connecting, because if this was the
+		// last connection before a disconnect(), this will not reconnect.
+		long start = metrics.start();
+		wifiManager.disableNetwork(networkId);
+		wifiManager.enableNetwork(networkId, true);
+		metrics.binder(start);
+	}
+
+	/**
+	 * Starts following a connection to the given network. Replaces any attempt
+	 * that is still being followed.
+	 *
+	 * @param selected
+	 *            sent along with the timings under selected, or null
+	 */
+	private void awaitConnection(final RequestContext callbackContext, String ssid, int networkId, long timeout,
+			final JSONObject selected) {
+		final ConnectionAttempt attempt = new ConnectionAttempt(ssid, networkId, trace) {
+			void connected(JSONObject timings) {
+				endConnectionAttempt(this);
+				callbackContext.success(withSelected(timings));
+			}
+
+			void failed(JSONObject timings) {
+				endConnectionAttempt(this);
+				callbackContext.error(withSelected(timings));
+			}
+
+			private JSONObject withSelected(JSONObject timings) {
+				if (selected != null) {
+					try {
+						timings.put("selected", selected);
+					} catch (JSONException e) {
+						// the timings are still worth sending
+					}
+				}
+				return timings;
+			}
+		};
+
+		ConnectionAttempt previous;
+		synchronized (connectionReceiver) {
+			previous = connectionAttempt;
+			connectionAttempt = attempt;
+			if (previous == null) {
+				IntentFilter filter = new IntentFilter(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+				filter.addAction(WifiManager.SUPPLICANT_STATE_CHANGED_ACTION);
+				cordova.getActivity().registerReceiver(connectionReceiver, filter);
+			}
+		}
+
+		if (previous != null) {
+			previous.fail("Replaced by a connection to " + ssid);
+		}
+
+		attempt.setTimeout(timer.schedule(new Runnable() {
+			public void run() {
+				attempt.fail("Timed out");
+			}
+		}, timeout, TimeUnit.MILLISECONDS));
+
+		// stops waiting; the network stays enabled
+		callbackContext.onCancel(new Runnable() {
+			public void run() {
+				attempt.fail(callbackContext.cancelReason());
+			}
+		});
+	}
+
+	private void endConnectionAttempt(ConnectionAttempt attempt) {
+		synchronized (connectionReceiver) {
+			if (connectionAttempt == attempt) {
+				connectionAttempt = null;
+				cordova.getActivity().unregisterReceiver(connectionReceiver);
+			}
+		}
+	}
+
+	/**
+	 * This method disconnects a network.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSON Array, with [0] being SSID to connect
+	 * @return true if network disconnected, false if failed
+	 */
+	private boolean disconnectNetwork(CallbackContext callbackContext, JSONArray data) {
+		trace.d("disconnectNetwork", null);
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: disconnectNetwork invalid data");
+			trace.e("disconnectNetwork", null, "invalid data");
+			return false;
+		}
+		String ssidToDisconnect = "";
+		// TODO: Verify type of data here!
+		try {
+			ssidToDisconnect = data.getString(0);
+		} catch (Exception e) {
+			callbackContext.error(e.getMessage());
+			trace.e("disconnectNetwork", null, e.getMessage());
+			return false;
+		}
+
+		int networkIdToDisconnect = ssidToNetworkId(ssidToDisconnect);
+
+		if (networkIdToDisconnect > 0) {
+			wifiManager.disableNetwork(networkIdToDisconnect);
+			callbackContext.success("Network " + ssidToDisconnect + " disconnected!");
+			return true;
+		} else {
+			callbackContext.error("Network " + ssidToDisconnect + " not found!");
+			trace.e("disconnectNetwork", ssidToDisconnect, "not found");
+			return false;
+		}
+	}
+
+	/**
+	 * This method disconnects current network.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @return true if network disconnected, false if failed
+	 */
+	private boolean disconnect(CallbackContext callbackContext) {
+		trace.d("disconnect", null);
+		if (wifiManager.disconnect()) {
+			callbackContext.success("Disconnected from current network");
+			return true;
+		} else {
+			callbackContext.error("Unable to disconnect from the current network");
+			return false;
+		}
+	}
+
+	/**
+	 * This method uses the callbackContext.success method to send the
+	 * currently configured networks, read from the ConfiguredNetworks
+	 * snapshot. Without options it sends a JSONArray of SSIDs. With options
+	 * it sends {version, networks}, each network an object with the fields
+	 * asked for, or just {version, notModified: true} if since is the current
+	 * version.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSON Array, with [0] an optional JSONObject with fields, an
+	 *            array of LIST_FIELDS (default all of them), and since, the
+	 *            last version the caller has seen
+	 * @return true if the networks could be read
+	 */
+	private boolean listNetworks(CallbackContext callbackContext, JSONArray data) {
+		trace.d("listNetworks", null);
+		JSONObject options = data.optJSONObject(0);
+
+		long version;
+		List<WifiConfiguration> wifiList;
+		synchronized (configuredNetworks) {
+			version = configuredNetworks.version();
+			if (options != null && options.optLong("since", -1) == version) {
+				try {
+					JSONObject notModified = new JSONObject();
+					notModified.put("version", version);
+					notModified.put("notModified", true);
+					callbackContext.success(notModified);
+				} catch (JSONException e) {
+					callbackContext.error(e.getMessage());
+					return false;
+				}
+				return true;
+			}
+			wifiList = configuredNetworks.networks();
+		}
+
+		if (wifiList == null) {
+			callbackContext.error("Could not read the configured networks.");
+			return false;
+		}
+
+		long start = metrics.start();
+		PluginResult result;
+		if (options == null) {
+			JSONArray returnList = new JSONArray();
+			for (WifiConfiguration wifi : wifiList) {
+				returnList.put(wifi.SSID);
+			}
+			result = new PluginResult(PluginResult.Status.OK, returnList);
+		} else {
+			try {
+				result = new PluginResult(PluginResult.Status.OK, listNetworks(wifiList, version, options));
+			} catch (Exception e) {
+				callbackContext.error(e.getMessage());
+				return false;
+			}
+		}
+		metrics.serialize(start);
+		callbackContext.sendPluginResult(result);
+
+		return true;
+	}
+
+	/**
+	 * Builds {version, networks} for listNetworks, with only the fields asked
+	 * for.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a field is unknown
+	 */
+	private static JSONObject listNetworks(List<WifiConfiguration> wifiList, long version, JSONObject options)
+			throws JSONException {
+		List<String> fields = LIST_FIELDS;
+		JSONArray asked = options.optJSONArray("fields");
+		if (asked != null) {
+			fields = new ArrayList<String>(asked.length());
+			for (int i = 0; i < asked.length(); i++) {
+				String field = asked.getString(i);
+				if (!LIST_FIELDS.contains(field)) {
+					throw new IllegalArgumentException("Unknown field: " + field);
+				}
+				fields.add(field);
+			}
+		}
+
+		JSONArray networks = new JSONArray();
+		for (WifiConfiguration wifi : wifiList) {
+			JSONObject network = new JSONObject();
+			for (String field : fields) {
+				if (field.equals("networkId")) {
+					network.put(field, wifi.networkId);
+				} else if (field.equals("SSID")) {
+					network.put(field, wifi.SSID);
+				} else if (field.equals("hiddenSSID")) {
+					network.put(field, wifi.hiddenSSID);
+				} else if (field.equals("keyMgmt")) {
+					int keyMgmt = wifi.allowedKeyManagement.nextSetBit(0);
+					network.put(field, keyMgmt >= 0 && keyMgmt < WifiConfiguration.KeyMgmt.strings.length
+							? WifiConfiguration.KeyMgmt.strings[keyMgmt] : JSONObject.NULL);
+				} else if (field.equals("status")) {
+					network.put(field, wifi.status >= 0 && wifi.status < WifiConfiguration.Status.strings.length
+							? WifiConfiguration.Status.strings[wifi.status] : JSONObject.NULL);
+				} else if (field.equals("priority")) {
+					network.put(field, wifi.priority);
+				}
+			}
+			networks.put(network);
+		}
+
+		JSONObject result = new JSONObject();
+		result.put("version", version);
+		result.put("networks", networks);
+		return result;
+	}
+
+	/**
+	 * This method uses the callbackContext.success method to send a JSONArray
+	 * of the scanned networks.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == JSONObject
+	 * @return true
+	 */
+	private boolean getScanResults(CallbackContext callbackContext, JSONArray data) {
+		return sendScanResults(callbackContext, data.optJSONObject(0));
+	}
+
+	private boolean sendScanResults(CallbackContext callbackContext, JSONObject options) {
+		ScanFilter filter;
+		try {
+			filter = ScanFilter.fromOptions(options);
+		} catch (IllegalArgumentException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+
+		long start = metrics.start();
+		List<ScanResult> scanResults = wifiManager.getScanResults();
+		metrics.binder(start);
+		start = metrics.start();
+
+		PluginResult result;
+		synchronized (scanStore) {
+			scanStore.update(scanResults);
+			int[] rows = filter == null ? scanStore.rows() : filter.apply(scanStore);
+			try {
+				if (options != null && options.optBoolean("delta", false)) {
+					ScanDeltaEncoder encoder = deltaEncoder(options.optString("client", ""));
+					result = new PluginResult(PluginResult.Status.OK, toDelta(scanStore, rows, options, encoder,
+							options.optLong("since", -1)));
+				} else {
+					result = toPluginResult(scanStore, rows, options);
+				}
+			} catch (Exception e) {
+				callbackContext.error(e.getMessage());
+				return false;
+			}
+		}
+		metrics.serialize(start);
+
+		callbackContext.sendPluginResult(result);
+		return true;
+	}
+
+	/**
+	 * This method reads the numLevels option of getScanResults.
+	 *
+	 * @todo - breaking change, remove this notice when tidying new release and
+	 *       explain changes, e.g.: 0.y.z includes a breaking change to
+	 *       WifiWizard.getScanResults(). Earlier versions set scans' level
+	 *       attributes to a number derived from
+	 *       wifiManager.calculateSignalLevel. This update returns scans' raw
+	 *       RSSI value as the level, per Android spec / APIs. If your
+	 *       application depends on the previous behaviour, we have added an
+	 *       options object that will modify behaviour: - if `(n == true || n <
+	 *       2)`, `*.getScanResults({numLevels: n})` will return data as before,
+	 *       split in 5 levels; - if `(n > 1)`, `*.getScanResults({numLevels:
+	 *       n})` will calculate the signal level, split in n levels; - if `(n
+	 *       == false)`, `*.getScanResults({numLevels: n})` will use the raw
+	 *       signal level;
+	 *
+	 * @param options
+	 *            the options object, may be null
+	 * @return the number of levels, or null for raw RSSI values
+	 */
+	private static Integer numLevels(JSONObject options) {
+		if (options == null || !options.has("numLevels")) {
+			return null;
+		}
+
+		Integer levels = options.optInt("numLevels");
+
+		if (levels > 0) {
+			return levels;
+		} else if (options.optBoolean("numLevels", false)) {
+			// use previous default for {numLevels: true}
+			return 5;
+		}
+		return null;
+	}
+
+	/**
+	 * This method builds the JSONArray of scanned networks sent by
+	 * getScanResults and watchScanResults, from the given rows of the scan
+	 * store.
+	 */
+	private static JSONArray toJSON(ScanStore store, int[] rows, Integer numLevels) throws JSONException {
+		JSONArray returnList = new JSONArray();
+
+		for (int row : rows) {
+			returnList.put(toJSON(store, row, numLevels));
+		}
+
+		return returnList;
+	}
+
+	private static JSONObject toJSON(ScanStore store, int row, Integer numLevels) throws JSONException {
+		int level;
+
+		if (numLevels == null) {
+			level = store.level(row);
+		} else {
+			level = WifiManager.calculateSignalLevel(store.level(row), numLevels);
+		}
+
+		JSONObject lvl = new JSONObject();
+		lvl.put("level", level);
+		lvl.put("SSID", store.ssid(row));
+		lvl.put("BSSID", store.bssidText(row));
+		return lvl;
+	}
+
+	/**
+	 * This method builds the result of getScanResults and watchScanResults in
+	 * the format asked for by the format option: the JSONArray built by toJSON
+	 * by default, or one of the compact formats of ScanResultEncoder.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the format is unknown
+	 */
+	private static PluginResult toPluginResult(ScanStore store, int[] rows, JSONObject options)
+			throws JSONException {
+		Integer numLevels = numLevels(options);
+		String format = format(options);
+
+		if (format == null) {
+			return new PluginResult(PluginResult.Status.OK, toJSON(store, rows, numLevels));
+		}
+
+		if (format.equals(ScanResultEncoder.FORMAT_COLUMNAR)) {
+			return new PluginResult(PluginResult.Status.OK, ScanResultEncoder.columnar(store, rows, numLevels));
+		}
+		return new PluginResult(PluginResult.Status.OK, ScanResultEncoder.binary(store, rows, numLevels));
+	}
+
+	/**
+	 * This method reads the format option of getScanResults.
+	 *
+	 * @return the format, or null for the default JSONArray
+	 * @throws IllegalArgumentException
+	 *             if the format is unknown
+	 */
+	private static String format(JSONObject options) {
+		String format = options == null ? null : options.optString("format", null);
+
+		if (format != null && !format.equals(ScanResultEncoder.FORMAT_COLUMNAR)
+				&& !format.equals(ScanResultEncoder.FORMAT_BINARY)) {
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+		return format;
+	}
+
+	/**
+	 * This method returns the delta state of a getScanResults client, so
+	 * clients polling with their own ids do not reset each other's sequence.
+	 * The least recently used client is forgotten past MAX_DELTA_CLIENTS and
+	 * gets the full set on its next call.
+	 */
+	private ScanDeltaEncoder deltaEncoder(String client) {
+		synchronized (scanDeltas) {
+			ScanDeltaEncoder encoder = scanDeltas.get(client);
+			if (encoder == null) {
+				encoder = new ScanDeltaEncoder();
+				scanDeltas.put(client, encoder);
+			}
+			return encoder;
+		}
+	}
+
+	/**
+	 * This method builds the delta sent by getScanResults and watchScanResults
+	 * when the delta option is set. Entries are shaped as by toJSON.
+	 *
+	 * @param options
+	 *            the getScanResults options, using numLevels and
+	 *            rssiThreshold
+	 * @param since
+	 *            the last sequence number the client has seen, or -1 to get
+	 *            the full set
+	 */
+	private static JSONObject toDelta(ScanStore store, int[] rows, JSONObject options, ScanDeltaEncoder encoder,
+			long since) throws JSONException {
+		final Integer numLevels = numLevels(options);
+		int threshold = options.optInt("rssiThreshold", ScanDeltaEncoder.DEFAULT_RSSI_THRESHOLD);
+
+		return encoder.encode(store, rows, new ScanDeltaEncoder.Formatter() {
+			public JSONObject toJSON(ScanStore store, int row) throws JSONException {
+				return WifiWizard.toJSON(store, row, numLevels);
+			}
+		}, threshold, since);
+	}
+
+	/**
+	 * This method registers a callback that receives the scanned networks,
+	 * formatted as by getScanResults, every time a scan completes. The
+	 * callback is kept until clearScanWatch is called with the same id.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == watch id, [1] == getScanResults options
+	 * @return true if the watch was registered
+	 */
+	private boolean watchScanResults(final RequestContext callbackContext, JSONArray data) {
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: watchScanResults data invalid");
+			trace.e("watchScanResults", null, "invalid data");
+			return false;
+		}
+
+		final String id = data.optString(0);
+		final ScanWatch watch;
+
+		try {
+			watch = new ScanWatch(callbackContext, data.optJSONObject(1));
+		} catch (IllegalArgumentException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+
+		ScanWatch replaced;
+		synchronized (scanWatches) {
+			replaced = scanWatches.put(id, watch);
+		}
+		if (replaced != null) {
+			releaseScanWatch(replaced);
+		}
+		callbackContext.onCancel(new Runnable() {
+			public void run() {
+				synchronized (scanWatches) {
+					if (scanWatches.get(id) == watch) {
+						scanWatches.remove(id);
+					}
+				}
+			}
+		});
+
+		PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+		result.setKeepCallback(true);
+		callbackContext.sendPluginResult(result);
+		return true;
+	}
+
+	/**
+	 * This method removes a callback registered with watchScanResults.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == watch id
+	 * @return true if the watch existed
+	 */
+	private boolean clearScanWatch(CallbackContext callbackContext, JSONArray data) {
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: clearScanWatch data invalid");
+			trace.e("clearScanWatch", null, "invalid data");
+			return false;
+		}
+
+		ScanWatch watch;
+		synchronized (scanWatches) {
+			watch = scanWatches.remove(data.optString(0));
+		}
+
+		if (watch == null) {
+			callbackContext.error("Scan watch not found.");
+			return false;
+		}
+
+		releaseScanWatch(watch);
+		callbackContext.success();
+		return true;
+	}
+
+	/** Drops a removed scan watch's delta state and releases its kept callback */
+	private void releaseScanWatch(ScanWatch watch) {
+		if (watch.deltas != null) {
+			watch.deltas.reset();
+		}
+		// releases the kept callback on the JS side
+		watch.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+	}
+
+	/**
+	 * This method registers a presence trigger. Its callback is kept and gets
+	 * {id, event: "enter" or "exit", SSID, BSSID, level, time} when matching
+	 * access points come into range or drop out of it, until removeTrigger is
+	 * called with the same id. See PresenceTriggers for the rule.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == trigger id, [1] == the rule
+	 * @return true if the trigger was registered
+	 */
+	private boolean addTrigger(final RequestContext callbackContext, JSONArray data) {
+		if (!validateData(callbackContext, data) || data.optJSONObject(1) == null) {
+			callbackContext.error("WifiWizard: addTrigger data invalid");
+			trace.e("addTrigger", null, "invalid data");
+			return false;
+		}
+
+		final String id = data.optString(0);
+		final PresenceTriggers.Trigger trigger;
+		try {
+			trigger = new PresenceTriggers.Trigger(id, callbackContext, data.optJSONObject(1));
+		} catch (IllegalArgumentException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+
+		PresenceTriggers.Trigger replaced = presenceTriggers.add(trigger);
+		if (replaced != null) {
+			replaced.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+		}
+		callbackContext.onCancel(new Runnable() {
+			public void run() {
+				presenceTriggers.remove(trigger);
+			}
+		});
+		trace.d("addTrigger", id);
+
+		PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+		result.setKeepCallback(true);
+		callbackContext.sendPluginResult(result);
+		return true;
+	}
+
+	/**
+	 * This method removes a trigger registered with addTrigger.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == trigger id
+	 * @return true if the trigger existed
+	 */
+	private boolean removeTrigger(CallbackContext callbackContext, JSONArray data) {
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: removeTrigger data invalid");
+			trace.e("removeTrigger", null, "invalid data");
+			return false;
+		}
+
+		PresenceTriggers.Trigger trigger = presenceTriggers.remove(data.optString(0));
+		if (trigger == null) {
+			callbackContext.error("Trigger not found.");
+			return false;
+		}
+
+		// releases the kept callback on the JS side
+		trigger.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+		callbackContext.success();
+		return true;
+	}
+
+	/**
+	 * Handles a finished scan: wakes anyone waiting on the scan scheduler, and
+	 * reads the results once for the scan history, the scan stats, the scan
+	 * watches and the presence triggers, if there are any.
+	 */
+	private void onScanResults() {
+		scanScheduler.onScanResults();
+
+		ScanHistory history = scanHistory;
+		BssidStats stats = scanStats;
+		AdaptiveScan periodic = periodicScan;
+		boolean watched;
+		synchronized (scanWatches) {
+			watched = !scanWatches.isEmpty();
+		}
+		if (history == null && stats == null && periodic == null && !watched && presenceTriggers.isEmpty()) {
+			return;
+		}
+
+		List<ScanResult> scanResults = wifiManager.getScanResults();
+		synchronized (scanStore) {
+			scanStore.update(scanResults);
+			if (history != null) {
+				history.append(System.currentTimeMillis(), scanStore);
+			}
+			if (stats != null) {
+				stats.update(scanStore);
+			}
+			presenceTriggers.evaluate(scanStore, System.currentTimeMillis());
+			if (periodic != null) {
+				periodic.update(scanStore);
+				schedulePeriodicScan(periodic, periodic.interval());
+			}
+			publishScanResults();
+		}
+	}
+
+	/**
+	 * Sends the scan store to every scan watch. The caller holds the lock on
+	 * the store.
+	 */
+	private void publishScanResults() {
+		synchronized (scanWatches) {
+			if (scanWatches.isEmpty()) {
+				return;
+			}
+
+			for (ScanWatch watch : scanWatches.values()) {
+				int[] rows = watch.filter == null ? scanStore.rows() : watch.filter.apply(scanStore);
+				PluginResult result;
+				if (watch.deltas != null) {
+					try {
+						result = new PluginResult(PluginResult.Status.OK, toDelta(scanStore, rows, watch.options,
+								watch.deltas, watch.deltas.sequence()));
+					} catch (JSONException e) {
+						result = new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+					}
+				} else {
+					try {
+						result = toPluginResult(scanStore, rows, watch.options);
+					} catch (JSONException e) {
+						result = new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+					}
+				}
+				result.setKeepCallback(true);
+				watch.callbackContext.sendPluginResult(result);
+			}
+		}
+	}
+
+	/**
+	 * Drops every scan watch. Used when the page goes away, so there is nobody
+	 * left to tell.
+	 */
+	private void clearScanWatches() {
+		synchronized (scanWatches) {
+			scanWatches.clear();
+		}
+	}
+
+	/**
+	 * This method uses the callbackContext.success method. It starts a wifi
+	 * scanning, through the scan scheduler: a scan that is already running is
+	 * joined, and when the platform's scan budget is used up the scan starts
+	 * as soon as it allows.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == optional JSONObject with maxAge, the
+	 *            oldest scan in ms that will do instead of a new one, and
+	 *            waitForResults, true to be called back with the scan results
+	 *            (shaped by the getScanResults options) rather than when the
+	 *            scan starts
+	 * @return true if the scan was requested
+	 */
+	private boolean startScan(final RequestContext callbackContext, JSONArray data) {
+		final JSONObject options = data.optJSONObject(0);
+		long maxAge = options == null ? 0 : options.optLong("maxAge", 0);
+		final boolean waitForResults = options != null && options.optBoolean("waitForResults", false);
+
+		if (waitForResults) {
+			try {
+				ScanFilter.fromOptions(options);
+				format(options);
+			} catch (IllegalArgumentException e) {
+				callbackContext.error(e.getMessage());
+				return false;
+			}
+		}
+
+		final ScanScheduler.Request request = new ScanScheduler.Request(maxAge, waitForResults) {
+			void ready() {
+				if (waitForResults) {
+					sendScanResults(callbackContext, options);
+				} else {
+					callbackContext.success();
+				}
+			}
+
+			void failed(String message) {
+				callbackContext.error(message);
+			}
+		};
+		scanScheduler.request(request);
+
+		callbackContext.onCancel(new Runnable() {
+			public void run() {
+				scanScheduler.withdraw(request, callbackContext.cancelReason());
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * This method retrieves the SSID for the currently connected network
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @return true if SSID found, false if not.
+	 */
+	private boolean getConnectedSSID(CallbackContext callbackContext) {
+		long start = metrics.start();
+		WifiInfo info = wifiManager.getConnectionInfo();
+		metrics.binder(start);
+
+		if (info == null) {
+			callbackContext.error("Unable to read wifi info");
+			return false;
+		}
+
+		String ssid = info.getSSID();
+		if (ssid.isEmpty()) {
+			ssid = info.getBSSID();
+		}
+		if (ssid.isEmpty()) {
+			callbackContext.error("SSID is empty");
+			return false;
+		}
+
+		callbackContext.success(ssid);
+		return true;
+	}
+
+	/**
+	 * This method sends the per-action call counts, failure counts and latency
+	 * percentiles collected since the plugin started or resetMetrics was
+	 * called. See ActionMetrics for the format.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @return true
+	 */
+	private boolean getMetrics(CallbackContext callbackContext) {
+		try {
+			callbackContext.success(metrics.toJSON());
+		} catch (JSONException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This method sends the events in the trace buffer, oldest first. See
+	 * Trace for the format.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == optional JSONObject with clear, true to
+	 *            empty the buffer after reading it
+	 * @return true
+	 */
+	private boolean dumpTrace(CallbackContext callbackContext, JSONArray data) {
+		JSONObject options = data.optJSONObject(0);
+
+		try {
+			callbackContext.success(trace.toJSON());
+		} catch (JSONException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+
+		if (options != null && options.optBoolean("clear", false)) {
+			trace.clear();
+		}
+		return true;
+	}
+
+	/**
+	 * This method sets which events are kept in the trace buffer.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == "off", "error" (the default), "info" or
+	 *            "debug"
+	 * @return true if the level was valid
+	 */
+	private boolean setTraceLevel(CallbackContext callbackContext, JSONArray data) {
+		try {
+			trace.setLevel(data.optString(0));
+		} catch (IllegalArgumentException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+		callbackContext.success();
+		return true;
+	}
+
+	/**
+	 * This method starts scanning periodically, less often while the scans
+	 * keep finding the same networks. The callback is kept and gets a summary
+	 * of each scan; see AdaptiveScan. A periodic scan already running is
+	 * replaced.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == optional JSONObject with minInterval
+	 *            and maxInterval (ms), minChange and maxDrift (dB)
+	 * @return true if the periodic scan started
+	 */
+	private boolean startPeriodicScan(final RequestContext callbackContext, JSONArray data) {
+		final AdaptiveScan scan;
+		try {
+			scan = new AdaptiveScan(callbackContext, data.optJSONObject(0));
+		} catch (IllegalArgumentException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+
+		synchronized (this) {
+			stopPeriodicScan(null);
+			periodicScan = scan;
+		}
+		callbackContext.onCancel(new Runnable() {
+			public void run() {
+				stopPeriodicScan(scan);
+			}
+		});
+
+		PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+		result.setKeepCallback(true);
+		callbackContext.sendPluginResult(result);
+
+		requestPeriodicScan(scan);
+		return true;
+	}
+
+	/**
+	 * Stops the periodic scan and releases its callback.
+	 *
+	 * @param only
+	 *            stop only if this is the running one, or null for any
+	 */
+	private synchronized void stopPeriodicScan(AdaptiveScan only) {
+		AdaptiveScan scan = periodicScan;
+		if (scan == null || (only != null && scan != only)) {
+			return;
+		}
+		periodicScan = null;
+		withdrawPeriodicScan(scan.stop());
+		scan.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+	}
+
+	private void requestPeriodicScan(final AdaptiveScan scan) {
+		if (scan.isStopped()) {
+			return;
+		}
+		// the results are handled in onScanResults, whoever started the scan
+		ScanScheduler.Request request = new ScanScheduler.Request(0, true) {
+			void ready() {
+				scan.answered(this);
+			}
+
+			void failed(String message) {
+				scan.answered(this);
+				if (scan.isStopped()) {
+					return;
+				}
+				trace.d("periodicScanFailed", message);
+				schedulePeriodicScan(scan, scan.interval());
+			}
+		};
+		if (!scan.setPending(request)) {
+			return;
+		}
+		scanScheduler.request(request);
+		// stopped while the request was being made, too late for stop to see it
+		if (scan.isStopped()) {
+			withdrawPeriodicScan(request);
+		}
+	}
+
+	/** Takes a stopped periodic scan's request out of the scan queue */
+	private void withdrawPeriodicScan(ScanScheduler.Request request) {
+		if (request != null) {
+			scanScheduler.withdraw(request, "Periodic scan stopped.");
+		}
+	}
+
+	private void schedulePeriodicScan(final AdaptiveScan scan, long delay) {
+		try {
+			scan.setNext(timer.schedule(new Runnable() {
+				public void run() {
+					requestPeriodicScan(scan);
+				}
+			}, delay, TimeUnit.MILLISECONDS));
+		} catch (RejectedExecutionException e) {
+			withdrawPeriodicScan(scan.stop());
+		}
+	}
+
+	/**
+	 * This method starts recording every scan to the scan history file in
+	 * app storage. A history already in the file is kept if it has the same
+	 * capacity, and started over otherwise. See ScanHistory for the format.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == optional JSONObject with capacity, the
+	 *            most records to keep before the oldest are overwritten, at
+	 *            most ScanHistory.MAX_CAPACITY
+	 * @return true if the history is recording
+	 */
+	private synchronized boolean startScanHistory(CallbackContext callbackContext, JSONArray data) {
+		JSONObject options = data.optJSONObject(0);
+		int capacity = options == null ? ScanHistory.DEFAULT_CAPACITY
+				: options.optInt("capacity", ScanHistory.DEFAULT_CAPACITY);
+
+		if (capacity <= 0 || capacity > ScanHistory.MAX_CAPACITY) {
+			callbackContext.error("Scan history capacity must be between 1 and " + ScanHistory.MAX_CAPACITY + ".");
+			return false;
+		}
+
+		closeScanHistory();
+		try {
+			scanHistory = new ScanHistory(new File(cordova.getActivity().getFilesDir(), SCAN_HISTORY_FILE), capacity);
+		} catch (IOException e) {
+			callbackContext.error("Could not open the scan history: " + e.getMessage());
+			trace.e("startScanHistory", null, e.getMessage());
+			return false;
+		}
+
+		callbackContext.success();
+		return true;
+	}
+
+	/**
+	 * This method stops recording scans. The history stays in the file
+	 * unless it is deleted.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == optional JSONObject with delete, true to
+	 *            remove the history file
+	 * @return true
+	 */
+	private synchronized boolean stopScanHistory(CallbackContext callbackContext, JSONArray data) {
+		JSONObject options = data.optJSONObject(0);
+
+		closeScanHistory();
+		if (options != null && options.optBoolean("delete", false)) {
+			new File(cordova.getActivity().getFilesDir(), SCAN_HISTORY_FILE).delete();
+		}
+
+		callbackContext.success();
+		return true;
+	}
+
+	/**
+	 * This method sends the recorded scans in a time range, oldest first, as
+	 * {records: [{time, BSSID, level, frequency}], truncated, stored}. Only
+	 * the matching records are read out of the file.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == optional JSONObject with from and to, in
+	 *            ms since the epoch, bssids, an array of BSSIDs to keep, and
+	 *            limit, the most records to send (default 1000)
+	 * @return true if the history was queried
+	 */
+	private boolean queryScanHistory(CallbackContext callbackContext, JSONArray data) {
+		ScanHistory history = scanHistory;
+		if (history == null) {
+			callbackContext.error("Scan history is not started.");
+			return false;
+		}
+
+		JSONObject options = data.optJSONObject(0);
+		if (options == null) {
+			options = new JSONObject();
+		}
+
+		Set<Long> bssids = null;
+		JSONArray list = options.optJSONArray("bssids");
+		if (list != null) {
+			bssids = new HashSet<Long>();
+			for (int i = 0; i < list.length(); i++) {
+				bssids.add(ScanStore.packMac(list.optString(i)));
+			}
+		}
+
+		try {
+			callbackContext.success(history.query(options.optLong("from", 0), options.optLong("to", Long.MAX_VALUE),
+					bssids, options.optInt("limit", DEFAULT_HISTORY_LIMIT)));
+		} catch (JSONException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This method starts keeping RSSI statistics per BSSID over the last
+	 * scans. Stats already being kept are started over.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSONArray with [0] == optional JSONObject with window, the
+	 *            number of scans (default 10, at most 127), and capacity, the
+	 *            most BSSIDs to keep (default 512)
+	 * @return true if the stats are being kept
+	 */
+	private boolean startScanStats(CallbackContext callbackContext, JSONArray data) {
+		JSONObject options = data.optJSONObject(0);
+		if (options == null) {
+			options = new JSONObject();
+		}
 
-				return true;
-			}
-			// TODO: Add more authentications as necessary
-			else {
-				Log.d(TAG, "Wifi Authentication Type Not Supported.");
-				callbackContext.error("Wifi Authentication Type Not Supported: " + authType);
-				return false;
-			}
-		} catch (Exception e) {
+		try {
+			scanStats = new BssidStats(options.optInt("window", BssidStats.DEFAULT_WINDOW),
+					options.optInt("capacity", BssidStats.DEFAULT_CAPACITY));
+		} catch (IllegalArgumentException e) {
 			callbackContext.error(e.getMessage());
-			Log.d(TAG, e.getMessage());
 			return false;
 		}
+
+		callbackContext.success();
+		return true;
 	}
 
 	/**
-	 * This method removes a network from the list of configured networks.
+	 * This method sends the RSSI statistics per BSSID, strongest mean first,
+	 * as {scans, window, stats: [{BSSID, SSID, frequency, seen, min, max,
+	 * mean, variance}]}.
 	 *
 	 * @param callbackContext
 	 *            A Cordova callback context
 	 * @param data
-	 *            JSON Array, with [0] being SSID to remove
-	 * @return true if network removed, false if failed
+	 *            JSONArray with [0] == optional JSONObject with bssids,
+	 *            ssidPrefix (a string or an array), minSeen, the fewest scans a
+	 *            BSSID must be seen in, and limit
+	 * @return true if the stats were sent
 	 */
-	private boolean removeNetwork(CallbackContext callbackContext, JSONArray data) {
-		Log.d(TAG, "WifiWizard: removeNetwork entered.");
-
-		if (!validateData(data)) {
-			callbackContext.error("WifiWizard: removeNetwork data invalid");
-			Log.d(TAG, "WifiWizard: removeNetwork data invalid");
+	private boolean getScanStats(CallbackContext callbackContext, JSONArray data) {
+		BssidStats stats = scanStats;
+		if (stats == null) {
+			callbackContext.error("Scan stats are not started.");
 			return false;
 		}
 
-		// TODO: Verify the type of data!
-		try {
-			String ssidToDisconnect = data.getString(0);
-
-			int networkIdToRemove = ssidToNetworkId(ssidToDisconnect);
+		JSONObject options = data.optJSONObject(0);
+		if (options == null) {
+			options = new JSONObject();
+		}
 
-			if (networkIdToRemove >= 0) {
-				wifiManager.removeNetwork(networkIdToRemove);
-				wifiManager.saveConfiguration();
-				callbackContext.success("Network removed.");
-				return true;
-			} else {
-				callbackContext.error("Network not found.");
-				Log.d(TAG, "WifiWizard: Network not found, can't remove.");
-				return false;
+		Set<Long> bssids = null;
+		List<String> list = ScanFilter.strings(options, "bssids");
+		if (list != null) {
+			bssids = new HashSet<Long>();
+			for (String bssid : list) {
+				bssids.add(ScanStore.packMac(bssid));
 			}
-		} catch (Exception e) {
+		}
+
+		try {
+			callbackContext.success(stats.query(bssids, ScanFilter.strings(options, "ssidPrefix"),
+					options.optInt("minSeen", 1), options.optInt("limit", 0)));
+		} catch (JSONException e) {
 			callbackContext.error(e.getMessage());
-			Log.d(TAG, e.getMessage());
 			return false;
 		}
+		return true;
+	}
+
+	private synchronized void closeScanHistory() {
+		ScanHistory history = scanHistory;
+		if (history == null) {
+			return;
+		}
+		scanHistory = null;
+		try {
+			history.close();
+		} catch (IOException e) {
+			trace.e("closeScanHistory", null, e.getMessage());
+		}
 	}
 
 	/**
-	 * This method connects a network.
+	 * This method cancels a running request: an awaited connectNetwork or
+	 * connectBest stops waiting, a startScan waiting for its scan gives up,
+	 * importNetworks stops before the next line and a watch ends. The
+	 * request fails with "Cancelled".
 	 *
 	 * @param callbackContext
 	 *            A Cordova callback context
 	 * @param data
-	 *            JSON Array, with [0] being SSID to connect
-	 * @return true if network connected, false if failed
+	 *            JSONArray with [0] == the requestId given in the request's
+	 *            options
+	 * @return true if the request was running
 	 */
-	private boolean connectNetwork(CallbackContext callbackContext, JSONArray data) {
-		Log.d(TAG, "WifiWizard: connectNetwork entered.");
-		if (!validateData(data)) {
-			callbackContext.error("WifiWizard: connectNetwork invalid data");
-			Log.d(TAG, "WifiWizard: connectNetwork invalid data.");
+	private boolean cancel(CallbackContext callbackContext, JSONArray data) {
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: cancel data invalid");
+			trace.e("cancel", null, "invalid data");
 			return false;
 		}
-		String ssidToConnect = "";
 
-		try {
-			ssidToConnect = data.getString(0);
-		} catch (Exception e) {
-			callbackContext.error(e.getMessage());
-			Log.d(TAG, e.getMessage());
-			return false;
+		String id = data.optString(0);
+		RequestContext request;
+		synchronized (requests) {
+			request = requests.get(id);
 		}
 
-		int networkIdToConnect = ssidToNetworkId(ssidToConnect);
-
-		if (networkIdToConnect >= 0) {
-			// We disable the network before connecting, because if this was the
-			// last connection before
-			// a disconnect(), this will not reconnect.
-			wifiManager.disableNetwork(networkIdToConnect);
-			wifiManager.enableNetwork(networkIdToConnect, true);
-			callbackContext.success("Network " + ssidToConnect + " connected!");
-			return true;
-		} else {
-			callbackContext.error("Network " + ssidToConnect + " not found!");
-			Log.d(TAG, "WifiWizard: Network not found to connect.");
+		if (request == null || !request.cancel("Cancelled")) {
+			callbackContext.error("Request not found.");
 			return false;
 		}
+
+		trace.i("cancel", id, null);
+		callbackContext.success();
+		return true;
 	}
 
 	/**
-	 * This method disconnects a network.
+	 * This method runs a list of actions one after the other in a single call.
+	 * Each step waits for the previous one to answer, including steps that
+	 * answer later such as an awaited connectNetwork. The steps run on the
+	 * serial lane whatever their own lane is, so nothing else that changes the
+	 * configuration can come between them. Cancelling the pipeline cancels
+	 * the step that is running. A step that has not answered within the step
+	 * timeout is cancelled and fails, so a step waiting on scan budget or on a
+	 * connection holds up the serial lane for a bounded time.
 	 *
 	 * @param callbackContext
 	 *            A Cordova callback context
 	 * @param data
-	 *            JSON Array, with [0] being SSID to connect
-	 * @return true if network disconnected, false if failed
+	 *            JSONArray with [0] == array of {action, args} and [1] ==
+	 *            optional JSONObject with stopOnError (default true) and
+	 *            stepTimeout (ms, default 60000, at most 300000)
+	 * @return true if every step was run or skipped
 	 */
-	private boolean disconnectNetwork(CallbackContext callbackContext, JSONArray data) {
-		Log.d(TAG, "WifiWizard: disconnectNetwork entered.");
-		if (!validateData(data)) {
-			callbackContext.error("WifiWizard: disconnectNetwork invalid data");
-			Log.d(TAG, "WifiWizard: disconnectNetwork invalid data");
+	private boolean pipeline(final RequestContext callbackContext, JSONArray data) throws JSONException {
+		JSONArray steps = data.optJSONArray(0);
+		if (steps == null) {
+			callbackContext.error("WifiWizard: pipeline data invalid");
+			trace.e("pipeline", null, "invalid data");
 			return false;
 		}
-		String ssidToDisconnect = "";
-		// TODO: Verify type of data here!
-		try {
-			ssidToDisconnect = data.getString(0);
-		} catch (Exception e) {
-			callbackContext.error(e.getMessage());
-			Log.d(TAG, e.getMessage());
+
+		JSONObject options = data.optJSONObject(1);
+		boolean stopOnError = options == null || options.optBoolean("stopOnError", true);
+		long stepTimeout = options == null ? DEFAULT_STEP_TIMEOUT : options.optLong("stepTimeout", DEFAULT_STEP_TIMEOUT);
+		if (stepTimeout <= 0 || stepTimeout > MAX_STEP_TIMEOUT) {
+			callbackContext.error("stepTimeout must be between 1 and " + MAX_STEP_TIMEOUT + " ms");
 			return false;
 		}
 
-		int networkIdToDisconnect = ssidToNetworkId(ssidToDisconnect);
+		for (int i = 0; i < steps.length(); i++) {
+			JSONObject step = steps.optJSONObject(i);
+			String action = step == null ? null : step.optString("action", null);
+			if (action == null || executorFor(action) == null || NOT_PIPELINED.contains(action)) {
+				callbackContext.error("Step " + i + ": " + action + " cannot run in a pipeline.");
+				return false;
+			}
+		}
 
-		if (networkIdToDisconnect > 0) {
-			wifiManager.disableNetwork(networkIdToDisconnect);
-			callbackContext.success("Network " + ssidToDisconnect + " disconnected!");
-			return true;
-		} else {
-			callbackContext.error("Network " + ssidToDisconnect + " not found!");
-			Log.d(TAG, "WifiWizard: Network not found to disconnect.");
-			return false;
+		final PipelineStep[] running = new PipelineStep[1];
+		callbackContext.onCancel(new Runnable() {
+			public void run() {
+				PipelineStep step;
+				synchronized (running) {
+					step = running[0];
+				}
+				if (step != null) {
+					step.cancel(callbackContext.cancelReason());
+				}
+			}
+		});
+
+		JSONArray results = new JSONArray();
+		boolean stopped = false;
+		for (int i = 0; i < steps.length(); i++) {
+			JSONObject step = steps.getJSONObject(i);
+			String action = step.getString("action");
+			JSONArray args = step.optJSONArray("args");
+			JSONObject result = new JSONObject().put("action", action);
+			results.put(result);
+
+			if (stopped) {
+				result.put("skipped", true);
+				continue;
+			}
+
+			PipelineStep context = new PipelineStep(callbackContext.id + "/" + i, callbackContext.getCallbackId(),
+					webView);
+			synchronized (running) {
+				running[0] = context;
+			}
+			// cancelled before the step was visible to the hook
+			if (callbackContext.isCancelled()) {
+				return false;
+			}
+
+			// timed as its own call, inside the pipeline's span
+			ActionMetrics.Span span = metrics.begin(action);
+			context.setSpan(span);
+			ActionMetrics.Span previous = metrics.enter(span);
+			try {
+				dispatch(action, args == null ? new JSONArray() : args, context);
+			} catch (Exception e) {
+				context.error(e.getMessage());
+				trace.e(action, null, e.getMessage());
+			} finally {
+				metrics.exit(previous);
+			}
+
+			try {
+				if (!context.await(stepTimeout)) {
+					// the cancel answers the step with an error
+					context.cancel("Step timed out");
+					trace.e(action, null, "step timed out");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				context.cancel("WifiWizard is shutting down.");
+				callbackContext.error("WifiWizard is shutting down.");
+				return false;
+			}
+			if (callbackContext.isCancelled()) {
+				return false;
+			}
+
+			boolean ok = context.isOk();
+			result.put("ok", ok);
+			result.put(ok ? "result" : "error", context.value());
+			stopped = !ok && stopOnError;
+		}
+
+		synchronized (running) {
+			running[0] = null;
 		}
+		if (trace.isEnabled(Trace.INFO)) {
+			trace.i("pipeline", null, steps.length() + (stopped ? " stopped" : ""));
+		}
+		callbackContext.success(results);
+		return !stopped;
 	}
 
 	/**
-	 * This method disconnects current network.
+	 * This method retrieves the current WiFi status
 	 *
 	 * @param callbackContext
 	 *            A Cordova callback context
-	 * @return true if network disconnected, false if failed
+	 * @return true if WiFi is enabled, fail will be called if not.
 	 */
-	private boolean disconnect(CallbackContext callbackContext) {
-		Log.d(TAG, "WifiWizard: disconnect entered.");
-		if (wifiManager.disconnect()) {
-			callbackContext.success("Disconnected from current network");
-			return true;
-		} else {
-			callbackContext.error("Unable to disconnect from the current network");
-			return false;
-		}
+	private boolean isWifiEnabled(CallbackContext callbackContext) {
+		boolean isEnabled = radio.isEnabled();
+		callbackContext.success(isEnabled ? "1" : "0");
+		return isEnabled;
 	}
 
 	/**
-	 * This method uses the callbackContext.success method to send a JSONArray
-	 * of the currently configured networks.
+	 * This method measures the path to a host over TCP with LinkProbe: connect
+	 * round trip percentiles and, if bytes is set, a throughput test. The
+	 * current RSSI and link speed are sent along. The host defaults to the
+	 * gateway handed out by DHCP.
 	 *
 	 * @param callbackContext
 	 *            A Cordova callback context
 	 * @param data
-	 *            JSON Array, with [0] being SSID to connect
-	 * @return true if network disconnected, false if failed
+	 *            JSONArray with [0] == optional JSONObject with host, port
+	 *            (default 80), samples (default 5, at most
+	 *            LinkProbe.MAX_SAMPLES), timeout (ms, default
+	 *            2000, at most LinkProbe.MAX_TIMEOUT), bytes (default 0, at
+	 *            most LinkProbe.MAX_BYTES), mode
+	 *            ("write" or "read") and request, sent before reading
+	 * @return true if the probe ran
 	 */
-	private boolean listNetworks(CallbackContext callbackContext) {
-		Log.d(TAG, "WifiWizard: listNetworks entered.");
-		List<WifiConfiguration> wifiList = wifiManager.getConfiguredNetworks();
+	private boolean probeLink(final RequestContext callbackContext, JSONArray data) throws JSONException {
+		JSONObject options = data.optJSONObject(0);
+		if (options == null) {
+			options = new JSONObject();
+		}
 
-		JSONArray returnList = new JSONArray();
+		int port = options.optInt("port", 80);
+		int samples = options.optInt("samples", 5);
+		int timeout = options.optInt("timeout", 2000);
+		int bytes = Math.min(options.optInt("bytes", 0), LinkProbe.MAX_BYTES);
+		String mode = options.optString("mode", "write");
+		if (samples < 1 || samples > LinkProbe.MAX_SAMPLES || port <= 0 || port > 0xffff || timeout <= 0 || timeout > LinkProbe.MAX_TIMEOUT
+				|| (!mode.equals("write") && !mode.equals("read"))) {
+			callbackContext.error("WifiWizard: probeLink options invalid");
+			return false;
+		}
 
-		for (WifiConfiguration wifi : wifiList) {
-			returnList.put(wifi.SSID);
+		InetAddress host;
+		try {
+			if (options.has("host")) {
+				host = InetAddress.getByName(options.getString("host"));
+			} else {
+				long start = metrics.start();
+				int gateway = wifiManager.getDhcpInfo().gateway;
+				metrics.binder(start);
+				if (gateway == 0) {
+					callbackContext.error("No gateway to probe; pass a host.");
+					return false;
+				}
+				host = LinkProbe.fromDhcp(gateway);
+			}
+		} catch (UnknownHostException e) {
+			callbackContext.error("Unknown host: " + e.getMessage());
+			return false;
+		}
+
+		final LinkProbe probe = new LinkProbe(new InetSocketAddress(host, port), timeout);
+		callbackContext.onCancel(new Runnable() {
+			public void run() {
+				probe.abort();
+			}
+		});
+
+		JSONObject result = new JSONObject();
+		result.put("host", host.getHostAddress());
+		result.put("port", port);
+		result.put("rtt", probe.rtt(samples));
+		if (bytes > 0 && !probe.isAborted()) {
+			result.put("throughput", probe.throughput(mode.equals("read"), bytes, options.optString("request", null)));
 		}
 
-		callbackContext.success(returnList);
+		long start = metrics.start();
+		WifiInfo info = wifiManager.getConnectionInfo();
+		metrics.binder(start);
+		result.put("rssi", info.getRssi());
+		result.put("linkSpeed", info.getLinkSpeed());
+
+		callbackContext.success(result);
+		return true;
+	}
 
+	private boolean getWifiSignalStrength(CallbackContext callbackContext) {
+		long start = metrics.start();
+		int linkSpeed = wifiManager.getConnectionInfo().getRssi();
+		metrics.binder(start);
+		callbackContext.success("" + linkSpeed);
 		return true;
 	}
 
 	/**
-	 * This method uses the callbackContext.success method to send a JSONArray
-	 * of the scanned networks.
+	 * This method registers a callback that receives the RSSI of the current
+	 * connection whenever it changes by a meaningful amount. Samples come from
+	 * RSSI_CHANGED_ACTION and, if an interval is given, from polling. They are
+	 * smoothed as described in RssiFilter, and only values that moved by at
+	 * least the hysteresis are sent.
 	 *
 	 * @param callbackContext
 	 *            A Cordova callback context
 	 * @param data
-	 *            JSONArray with [0] == JSONObject
-	 * @return true
+	 *            JSONArray with [0] == watch id, [1] == optional JSONObject
+	 *            with interval (ms, 0 for no polling) and the RssiFilter
+	 *            options
+	 * @return true if the watch was registered
 	 */
-	private boolean getScanResults(CallbackContext callbackContext, JSONArray data) {
-		List<ScanResult> scanResults = wifiManager.getScanResults();
-
-		JSONArray returnList = new JSONArray();
-
-		Integer numLevels = null;
+	private boolean watchSignalStrength(final RequestContext callbackContext, JSONArray data) {
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: watchSignalStrength data invalid");
+			trace.e("watchSignalStrength", null, "invalid data");
+			return false;
+		}
 
-		if (!data.isNull(0)) {
-			try {
-				JSONObject options = data.getJSONObject(0);
+		final String id = data.optString(0);
+		JSONObject options = data.optJSONObject(1);
+		final SignalWatch watch;
 
-				if (options.has("numLevels")) {
-					Integer levels = options.optInt("numLevels");
+		try {
+			watch = new SignalWatch(callbackContext, new RssiFilter(options));
+		} catch (IllegalArgumentException e) {
+			callbackContext.error(e.getMessage());
+			return false;
+		}
 
-					if (levels > 0) {
-						numLevels = levels;
-					} else if (options.optBoolean("numLevels", false)) {
-						// use previous default for {numLevels: true}
-						numLevels = 5;
-					}
+		long interval = options == null ? 0 : options.optLong("interval", 0);
+		if (interval > 0) {
+			watch.poll = timer.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					fastExecutor.execute(new Runnable() {
+						public void run() {
+							publishSignalStrength(watch, wifiManager.getConnectionInfo().getRssi());
+						}
+					});
 				}
-			} catch (JSONException e) {
-				e.printStackTrace();
-			}
-		}
-
-		for (ScanResult scan : scanResults) {
-			/*
-			 * @todo - breaking change, remove this notice when tidying new
-			 * release and explain changes, e.g.: 0.y.z includes a breaking
-			 * change to WifiWizard.getScanResults(). Earlier versions set
-			 * scans' level attributes to a number derived from
-			 * wifiManager.calculateSignalLevel. This update returns scans' raw
-			 * RSSI value as the level, per Android spec / APIs. If your
-			 * application depends on the previous behaviour, we have added an
-			 * options object that will modify behaviour: - if `(n == true || n
-			 * < 2)`, `*.getScanResults({numLevels: n})` will return data as
-			 * before, split in 5 levels; - if `(n > 1)`,
-			 * `*.getScanResults({numLevels: n})` will calculate the signal
-			 * level, split in n levels; - if `(n == false)`,
-			 * `*.getScanResults({numLevels: n})` will use the raw signal level;
-			 */
-
-			int level;
-
-			if (numLevels == null) {
-				level = scan.level;
-			} else {
-				level = wifiManager.calculateSignalLevel(scan.level, numLevels);
-			}
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		}
 
-			JSONObject lvl = new JSONObject();
-			try {
-				lvl.put("level", level);
-				lvl.put("SSID", scan.SSID);
-				lvl.put("BSSID", scan.BSSID);
-				returnList.put(lvl);
-			} catch (JSONException e) {
-				e.printStackTrace();
+		SignalWatch replaced;
+		synchronized (signalWatches) {
+			if (signalWatches.isEmpty()) {
+				cordova.getActivity().registerReceiver(rssiReceiver, new IntentFilter(WifiManager.RSSI_CHANGED_ACTION));
 			}
+			replaced = signalWatches.put(id, watch);
 		}
+		if (replaced != null) {
+			if (replaced.poll != null) {
+				replaced.poll.cancel(false);
+			}
+			replaced.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+		}
+
+		callbackContext.onCancel(new Runnable() {
+			public void run() {
+				removeSignalWatch(id, watch);
+			}
+		});
 
-		callbackContext.success(returnList);
+		// send the current value straight away
+		publishSignalStrength(watch, wifiManager.getConnectionInfo().getRssi());
 		return true;
 	}
 
 	/**
-	 * This method uses the callbackContext.success method. It starts a wifi
-	 * scanning
+	 * This method removes a callback registered with watchSignalStrength.
 	 *
 	 * @param callbackContext
 	 *            A Cordova callback context
-	 * @return true if started was successful
+	 * @param data
+	 *            JSONArray with [0] == watch id
+	 * @return true if the watch existed
 	 */
-	private boolean startScan(CallbackContext callbackContext) {
-		if (wifiManager.startScan()) {
-			callbackContext.success();
-			return true;
-		} else {
-			callbackContext.error("Scan failed");
+	private boolean clearSignalWatch(CallbackContext callbackContext, JSONArray data) {
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: clearSignalWatch data invalid");
+			trace.e("clearSignalWatch", null, "invalid data");
+			return false;
+		}
+
+		SignalWatch watch = removeSignalWatch(data.optString(0), null);
+
+		if (watch == null) {
+			callbackContext.error("Signal watch not found.");
 			return false;
 		}
+
+		// releases the kept callback on the JS side
+		watch.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+		callbackContext.success();
+		return true;
 	}
 
 	/**
-	 * This method retrieves the SSID for the currently connected network
+	 * Removes a signal watch and stops its polling.
 	 *
-	 * @param callbackContext
-	 *            A Cordova callback context
-	 * @return true if SSID found, false if not.
+	 * @param only
+	 *            remove the watch only if it is this one, or null for any
+	 * @return the watch removed, or null
 	 */
-	private boolean getConnectedSSID(CallbackContext callbackContext) {
-		if (!wifiManager.isWifiEnabled()) {
-			callbackContext.error("Wifi is disabled");
-			return false;
+	private SignalWatch removeSignalWatch(String id, SignalWatch only) {
+		SignalWatch watch;
+		synchronized (signalWatches) {
+			watch = signalWatches.get(id);
+			if (watch == null || (only != null && watch != only)) {
+				return null;
+			}
+			signalWatches.remove(id);
+			if (signalWatches.isEmpty()) {
+				cordova.getActivity().unregisterReceiver(rssiReceiver);
+			}
 		}
 
-		WifiInfo info = wifiManager.getConnectionInfo();
-
-		if (info == null) {
-			callbackContext.error("Unable to read wifi info");
-			return false;
+		if (watch.poll != null) {
+			watch.poll.cancel(false);
 		}
+		return watch;
+	}
 
-		String ssid = info.getSSID();
-		if (ssid.isEmpty()) {
-			ssid = info.getBSSID();
-		}
-		if (ssid.isEmpty()) {
-			callbackContext.error("SSID is empty");
-			return false;
+	private void publishSignalStrength(SignalWatch watch, int rssi) {
+		Integer smoothed = watch.filter.update(rssi);
+		if (smoothed == null) {
+			return;
 		}
 
-		callbackContext.success(ssid);
-		return true;
+		try {
+			JSONObject signal = new JSONObject();
+			signal.put("rssi", smoothed.intValue());
+			signal.put("raw", rssi);
+			signal.put("timestamp", System.currentTimeMillis());
+
+			PluginResult result = new PluginResult(PluginResult.Status.OK, signal);
+			result.setKeepCallback(true);
+			watch.callbackContext.sendPluginResult(result);
+		} catch (JSONException e) {
+			trace.e("watchSignalStrength", null, e.getMessage());
+		}
 	}
 
 	/**
-	 * This method retrieves the current WiFi status
-	 *
-	 * @param callbackContext
-	 *            A Cordova callback context
-	 * @return true if WiFi is enabled, fail will be called if not.
+	 * Drops every signal watch, see clearScanWatches.
 	 */
-	private boolean isWifiEnabled(CallbackContext callbackContext) {
-		boolean isEnabled = wifiManager.isWifiEnabled();
-		callbackContext.success(isEnabled ? "1" : "0");
-		return isEnabled;
-	}
-
-	private boolean getWifiSignalStrength(CallbackContext callbackContext) {
-		int linkSpeed = wifiManager.getConnectionInfo().getRssi();
-		callbackContext.success("" + linkSpeed);
-		return true;
+	private void clearSignalWatches() {
+		synchronized (signalWatches) {
+			if (signalWatches.isEmpty()) {
+				return;
+			}
+			cordova.getActivity().unregisterReceiver(rssiReceiver);
+			for (SignalWatch watch : signalWatches.values()) {
+				if (watch.poll != null) {
+					watch.poll.cancel(false);
+				}
+			}
+			signalWatches.clear();
+		}
 	}
 
 	/**
-	 * This method takes a given String, searches the current list of configured
+	 * This method takes a given String, looks it up in the index of configured
 	 * WiFi networks, and returns the networkId for the network if the SSID
 	 * matches. If not, it returns -1.
 	 */
 	private int ssidToNetworkId(String ssid) {
-		List<WifiConfiguration> currentNetworks = wifiManager.getConfiguredNetworks();
-		int networkId = -1;
-
-		// For each network in the list, compare the SSID with the given one
-		for (WifiConfiguration test : currentNetworks) {
-			if (test.SSID.equals(ssid)) {
-				networkId = test.networkId;
-			}
-		}
-
-		return networkId;
+		return configuredNetworks.networkId(ssid);
 	}
 
 	/**
-	 * This method enables or disables the wifi
+	 * This method enables or disables the wifi. Nothing is asked of the
+	 * system if the radio is already in, or on its way to, that state. By
+	 * default it reports success as soon as the system accepts the change.
+	 * With the await option it reports once the radio is enabled or disabled,
+	 * or fails after timeout ms.
+	 *
+	 * @param callbackContext
+	 *            A Cordova callback context
+	 * @param data
+	 *            JSON Array, with [0] "true" or "false" and [1] an optional
+	 *            JSONObject with await (boolean) and timeout (ms)
+	 * @return true if the change was accepted
 	 */
-	private boolean setWifiEnabled(CallbackContext callbackContext, JSONArray data) {
-		if (!validateData(data)) {
-			callbackContext.error("WifiWizard: disconnectNetwork invalid data");
-			Log.d(TAG, "WifiWizard: disconnectNetwork invalid data");
+	private boolean setWifiEnabled(final RequestContext callbackContext, JSONArray data) {
+		if (!validateData(callbackContext, data)) {
+			callbackContext.error("WifiWizard: setWifiEnabled invalid data");
+			trace.e("setWifiEnabled", null, "invalid data");
 			return false;
 		}
 
@@ -683,20 +2754,49 @@ public class WifiWizard extends CordovaPlugin {
 			status = data.getString(0);
 		} catch (Exception e) {
 			callbackContext.error(e.getMessage());
-			Log.d(TAG, e.getMessage());
+			trace.e("setWifiEnabled", null, e.getMessage());
 			return false;
 		}
 
-		if (wifiManager.setWifiEnabled(status.equals("true"))) {
-			callbackContext.success();
-			return true;
-		} else {
+		boolean enabled = status.equals("true");
+		JSONObject options = data.optJSONObject(1);
+		boolean await = options != null && options.optBoolean("await", false);
+
+		if (!radio.setEnabled(enabled)) {
 			callbackContext.error("Cannot enable wifi");
 			return false;
 		}
+
+		if (!await) {
+			callbackContext.success();
+			return true;
+		}
+
+		final WifiRadioState.Waiter waiter = new WifiRadioState.Waiter(enabled) {
+			void reached() {
+				callbackContext.success();
+			}
+
+			void failed(String message) {
+				callbackContext.error(message);
+			}
+		};
+		radio.await(waiter);
+
+		waiter.setTimeout(timer.schedule(new Runnable() {
+			public void run() {
+				radio.withdraw(waiter, "Timed out");
+			}
+		}, options.optLong("timeout", DEFAULT_RADIO_TIMEOUT), TimeUnit.MILLISECONDS));
+		callbackContext.onCancel(new Runnable() {
+			public void run() {
+				radio.withdraw(waiter, callbackContext.cancelReason());
+			}
+		});
+		return true;
 	}
 
-	private boolean validateData(JSONArray data) {
+	private boolean validateData(CallbackContext callbackContext, JSONArray data) {
 		try {
 			if (data == null || data.get(0) == null) {
 				callbackContext.error("Data is null.");
@@ -709,4 +2809,47 @@ public class WifiWizard extends CordovaPlugin {
 		return false;
 	}
 
+	private static class ScanWatch {
+		final CallbackContext callbackContext;
+		final JSONObject options;
+		final ScanFilter filter;
+		/** Set when the watch sends deltas */
+		final ScanDeltaEncoder deltas;
+
+		ScanWatch(CallbackContext callbackContext, JSONObject options) {
+			this.callbackContext = callbackContext;
+			this.options = options;
+			this.filter = ScanFilter.fromOptions(options);
+			// fail on an unknown format now rather than on every scan
+			format(options);
+			this.deltas = options != null && options.optBoolean("delta", false) ? new ScanDeltaEncoder() : null;
+		}
+	}
+
+	private static class SignalWatch {
+		final CallbackContext callbackContext;
+		final RssiFilter filter;
+		ScheduledFuture<?> poll;
+
+		SignalWatch(CallbackContext callbackContext, RssiFilter filter) {
+			this.callbackContext = callbackContext;
+			this.filter = filter;
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
 }
@@ -153,6 +153,40 @@ window.WifiWizard = {
         cordova.exec(win, fail, 'WifiWizard', 'addNetwork', networkInformation);
     },
 
+    /**
+     *	This method adds or updates every network listed in a file, saving the
+     *	configuration once at the end.
+     *	@param	path	JSON-lines or CSV file, absolute or relative to the app's files directory
+     *	@param	options	optional object: format ('jsonl' or 'csv'), enable (default true)
+     *	@param	win		function that receives the per-entry result summary
+     *	@param	fail		function to handle error callback
+     */
+    importNetworks: function(path, options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'importNetworks', [path, options || {}]);
+    },
+
+    /**
+     *	This method makes the configured networks match a desired set.
+     *	@param	networks	array of networks, as formatted by formatWifiConfig or
+     *						{SSID, auth, password, hidden}
+     *	@param	options	optional object: prune ("managed", "all" or "none"), enable
+     *	@param	win		function that receives the changes made
+     *	@param	fail		function that is called to handle errors
+     */
+    ensureNetworks: function(networks, options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'ensureNetworks', [networks, options || {}]);
+    },
+
     /**
      *	This method removes a given network from the list of configured networks.
      *	@param	SSID	of the network to remove
@@ -166,11 +200,33 @@ window.WifiWizard = {
     /**
      *	This method connects a network if it is configured.
      *	@param	SSID	the network to connect
+     *	@param	options	optional object: await (wait for an IP address), timeout (ms)
      *	@param	win		function that is called if successful
      * @param	fail		function that is called to handle errors
      */
-    connectNetwork: function(SSID, win, fail) {
-        cordova.exec(win, fail, 'WifiWizard', 'connectNetwork', [WifiWizard.formatWifiString(SSID)]);
+    connectNetwork: function(SSID, options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'connectNetwork', [WifiWizard.formatWifiString(SSID), options || {}]);
+    },
+
+    /**
+     *	This method connects the best configured network in range, unless it is already connected.
+     *	@param	options	optional object: minRssi, bandBonus, priorityWeight, hysteresis (dB),
+     *					await, timeout (ms)
+     *	@param	win		function that receives the network picked
+     * @param	fail		function that is called to handle errors
+     */
+    connectBest: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'connectBest', [options || {}]);
     },
 
     /**
@@ -186,22 +242,82 @@ window.WifiWizard = {
 
     /**
      *	Hands the list of previously used and configured networks to the `win` success callback function.
+     * @param   options optional json object: fields, since. Without it `win` receives an array of SSIDs,
+     *                  with it {version, networks} or {version, notModified: true}
      * @param 	win	callback function that receives list of networks
      * @param 	fail	callback function if error
      * @return		a list of networks
      */
-    listNetworks: function(win, fail) {
+    listNetworks: function(options, win, fail) {
+        var args = [];
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+        } else {
+            args = [options || {}];
+        }
         if (typeof win != "function") {
             console.log("listNetworks first parameter must be a function to handle list.");
             return;
         }
-        cordova.exec(win, fail, 'WifiWizard', 'listNetworks', []);
+        cordova.exec(win, fail, 'WifiWizard', 'listNetworks', args);
     },
     
+    /**
+     *  Measures TCP connect round trips, and optionally throughput, to a host, by default the gateway.
+     * @param   options optional json object: host, port, samples, timeout, bytes, mode ('write' or 'read'), request
+     * @param 	win	callback function that receives {host, port, rtt, throughput, rssi, linkSpeed}
+     * @param 	fail	callback function if error
+     */
+    probeLink: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'probeLink', [options || {}]);
+    },
+
     wifiSignalStrength: function(win, fail) {
         cordova.exec(win, fail, 'WifiWizard', 'wifiSignalStrength', []);
     },
 
+    /**
+     *  Calls `win` with {rssi, raw, timestamp} whenever the smoothed signal
+     *  strength of the current connection changes, until clearSignalWatch is
+     *  called.
+     * @param   options optional json object: interval, smoothing, alpha, window, hysteresis
+     * @param 	win	callback function that receives the signal strength
+     * @param 	fail	callback function if error
+     * @return		the watch id to pass to clearSignalWatch
+     */
+    watchSignalStrength: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+
+        if (typeof win != "function") {
+            console.log("watchSignalStrength first parameter must be a function to handle signal strength.");
+            return;
+        }
+
+        var id = WifiWizard._nextWatchId();
+        cordova.exec(win, fail, 'WifiWizard', 'watchSignalStrength', [id, options]);
+        return id;
+    },
+
+    /**
+     *  Stops a watch started with watchSignalStrength.
+     * @param   id	the watch id
+     * @param 	win	callback function
+     * @param 	fail	callback function if error
+     */
+    clearSignalWatch: function(id, win, fail) {
+        cordova.exec(win, fail, 'WifiWizard', 'clearSignalWatch', [id]);
+    },
+
 	/**
 	 *  Hands the list of scanned  networks to the `win` success callback function.
          * @param   opts optional json object of options
@@ -221,20 +337,189 @@ window.WifiWizard = {
             return;
         }
 
-        cordova.exec(win, fail, 'WifiWizard', 'getScanResults', [options]);
+        cordova.exec(WifiWizard._decoding(options, win), fail, 'WifiWizard', 'getScanResults', [options]);
+    },
+
+    /**
+     *  Turns scan results sent in the 'columnar' or 'binary' format back into
+     *  the usual list of {level, SSID, BSSID, frequency} objects.
+     * @param   result  the columnar object or the ArrayBuffer
+     * @return		a list of networks
+     */
+    decodeScanResults: function(result) {
+        var networks = [];
+        var i;
+
+        if (result instanceof ArrayBuffer) {
+            var view = new DataView(result);
+            var count = view.getUint16(1);
+            var offset = 3;
+
+            for (i = 0; i < count; i++) {
+                var bssid = [];
+                for (var b = 0; b < 6; b++) {
+                    var hex = view.getUint8(offset + b).toString(16);
+                    bssid.push(hex.length < 2 ? '0' + hex : hex);
+                }
+                var level = view.getInt8(offset + 6);
+                var frequency = view.getUint16(offset + 7);
+                var length = view.getUint8(offset + 9);
+                var ssid = WifiWizard._decodeUtf8(new Uint8Array(result, offset + 10, length));
+
+                networks.push({ level: level, SSID: ssid, BSSID: bssid.join(':'), frequency: frequency });
+                offset += 10 + length;
+            }
+        } else if (result && result.bssids) {
+            for (i = 0; i < result.bssids.length; i++) {
+                networks.push({
+                    level: result.levels[i],
+                    SSID: result.ssids[i],
+                    BSSID: result.bssids[i],
+                    frequency: result.frequencies[i]
+                });
+            }
+        }
+
+        return networks;
+    },
+
+    _decoding: function(options, win) {
+        if (!options || !options.format || !options.decode) {
+            return win;
+        }
+        return function(result) {
+            win(WifiWizard.decodeScanResults(result));
+        };
+    },
+
+    _decodeUtf8: function(bytes) {
+        var encoded = '';
+        for (var i = 0; i < bytes.length; i++) {
+            var hex = bytes[i].toString(16);
+            encoded += '%' + (hex.length < 2 ? '0' + hex : hex);
+        }
+        try {
+            return decodeURIComponent(encoded);
+        } catch (e) {
+            return String.fromCharCode.apply(null, bytes);
+        }
+    },
+
+    /**
+     *  Calls `win` with the list of scanned networks every time a scan
+     *  completes, until clearScanWatch is called.
+     * @param   options optional json object of options, as for getScanResults
+     * @param 	win	callback function that receives list of networks
+     * @param 	fail	callback function if error
+     * @return		the watch id to pass to clearScanWatch
+     */
+    watchScanResults: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+
+        if (typeof win != "function") {
+            console.log("watchScanResults first parameter must be a function to handle list.");
+            return;
+        }
+
+        var id = WifiWizard._nextWatchId();
+        cordova.exec(WifiWizard._decoding(options, win), fail, 'WifiWizard', 'watchScanResults', [id, options]);
+        return id;
+    },
+
+    /**
+     *  Stops a watch started with watchScanResults.
+     * @param   id	the watch id
+     * @param 	win	callback function
+     * @param 	fail	callback function if error
+     */
+    clearScanWatch: function(id, win, fail) {
+        cordova.exec(win, fail, 'WifiWizard', 'clearScanWatch', [id]);
+    },
+
+    /**
+     *  Calls `win` when access points matching a rule come into range or drop
+     *  out of it, until removeTrigger is called.
+     * @param   rule    json object: SSID, ssidPrefix, bssids, enterRssi, exitRssi, debounce
+     * @param 	win	callback function that receives {id, event, SSID, BSSID, level, time}
+     * @param 	fail	callback function if error
+     * @return		the trigger id to pass to removeTrigger
+     */
+    addTrigger: function(rule, win, fail) {
+        if (typeof win != "function") {
+            console.log("addTrigger second parameter must be a function to handle events.");
+            return;
+        }
+
+        var id = WifiWizard._nextWatchId();
+        cordova.exec(win, fail, 'WifiWizard', 'addTrigger', [id, rule]);
+        return id;
+    },
+
+    /**
+     *  Removes a trigger added with addTrigger.
+     * @param   id	the trigger id
+     * @param 	win	callback function
+     * @param 	fail	callback function if error
+     */
+    removeTrigger: function(id, win, fail) {
+        cordova.exec(win, fail, 'WifiWizard', 'removeTrigger', [id]);
+    },
+
+    _watchCount: 0,
+
+    _nextWatchId: function() {
+        WifiWizard._watchCount++;
+        return 'watch' + WifiWizard._watchCount;
     },
 
     /**
      *  Start scanning wifi.
+     * @param   options optional json object: maxAge, waitForResults, and the
+     *          getScanResults options when waiting for results
      * @param 	win	callback function
      * @param 	fail	callback function if error
      */
-    startScan: function(win, fail) {
+    startScan: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+
         if (typeof win != "function") {
             console.log("startScan first parameter must be a function to handle list.");
             return;
         }
-        cordova.exec(win, fail, 'WifiWizard', 'startScan', []);
+        cordova.exec(WifiWizard._decoding(options, win), fail, 'WifiWizard', 'startScan', [options]);
+    },
+
+    /**
+     *  Scans periodically, less often while nothing changes, until
+     *  stopPeriodicScan is called.
+     * @param   options optional json object: minInterval, maxInterval, minChange, maxDrift
+     * @param 	win	callback function that receives a summary of each scan
+     * @param 	fail	callback function if error
+     */
+    startPeriodicScan: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'startPeriodicScan', [options]);
+    },
+
+    /**
+     *  Stops the periodic scan.
+     * @param 	win	callback function
+     * @param 	fail	callback function if error
+     */
+    stopPeriodicScan: function(win, fail) {
+        cordova.exec(win, fail, 'WifiWizard', 'stopPeriodicScan', []);
     },
 
     /**
@@ -284,17 +569,182 @@ window.WifiWizard = {
     },
 
     /**
-     *  Gets '1' if WiFi is enabled
-     * @param   enabled	callback function
+     *  Turns wifi on or off
+     * @param   enabled	true to turn wifi on, false to turn it off
+     * @param   options	optional object: await (wait for the radio to get there), timeout (ms)
      * @param 	win	callback function
-     * @param 	fail	callback function if wifi is disabled
+     * @param 	fail	callback function if wifi could not be changed
      */
-    setWifiEnabled: function(enabled, win, fail) {
+    setWifiEnabled: function(enabled, options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
         if (typeof win != "function") {
             console.log("setWifiEnabled second parameter must be a function to handle enable result.");
             return;
         }
-        cordova.exec(win, fail, 'WifiWizard', 'setWifiEnabled', [enabled]);
+        cordova.exec(win, fail, 'WifiWizard', 'setWifiEnabled', [enabled, options || {}]);
+    },
+
+    /**
+     *  Gets the call counts, failure counts and latency percentiles of every
+     *  action since the plugin started or resetMetrics was called.
+     * @param 	win	callback function that receives the metrics
+     * @param 	fail	callback function if error
+     */
+    getMetrics: function(win, fail) {
+        if (typeof win != "function") {
+            console.log("getMetrics first parameter must be a function to handle metrics.");
+            return;
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'getMetrics', []);
+    },
+
+    /**
+     *  Clears the metrics returned by getMetrics.
+     * @param 	win	callback function
+     * @param 	fail	callback function if error
+     */
+    resetMetrics: function(win, fail) {
+        cordova.exec(win, fail, 'WifiWizard', 'resetMetrics', []);
+    },
+
+    /**
+     *  Gets the events in the plugin's trace buffer, oldest first.
+     * @param   options optional json object: clear, true to empty the buffer
+     * @param 	win	callback function that receives the trace
+     * @param 	fail	callback function if error
+     */
+    dumpTrace: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'dumpTrace', [options]);
+    },
+
+    /**
+     *  Sets which events are kept in the trace buffer.
+     * @param   level	'off', 'error' (the default), 'info' or 'debug'
+     * @param 	win	callback function
+     * @param 	fail	callback function if error
+     */
+    setTraceLevel: function(level, win, fail) {
+        cordova.exec(win, fail, 'WifiWizard', 'setTraceLevel', [level]);
+    },
+
+    /**
+     *  Cancels a running request started with {requestId: id} in its options.
+     * @param   requestId	the id given to the request
+     * @param 	win	callback function
+     * @param 	fail	callback function if no such request is running
+     */
+    cancel: function(requestId, win, fail) {
+        cordova.exec(win, fail, 'WifiWizard', 'cancel', [requestId]);
+    },
+
+    /**
+     *  Starts recording every scan to a size-capped history file in app storage.
+     * @param   options optional json object: capacity, the most records to keep
+     * @param 	win	callback function
+     * @param 	fail	callback function if error
+     */
+    startScanHistory: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'startScanHistory', [options]);
+    },
+
+    /**
+     *  Stops recording scans.
+     * @param   options optional json object: delete, true to remove the history file
+     * @param 	win	callback function
+     * @param 	fail	callback function if error
+     */
+    stopScanHistory: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'stopScanHistory', [options]);
+    },
+
+    /**
+     *  Gets recorded scans, oldest first.
+     * @param   options optional json object: from and to (ms since epoch), bssids, limit
+     * @param 	win	callback function that receives {records, truncated, stored}
+     * @param 	fail	callback function if error
+     */
+    queryScanHistory: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'queryScanHistory', [options]);
+    },
+
+    /**
+     *  Starts keeping RSSI statistics per BSSID over the last scans.
+     * @param   options optional json object: window (scans), capacity (BSSIDs)
+     * @param 	win	callback function
+     * @param 	fail	callback function if error
+     */
+    startScanStats: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'startScanStats', [options]);
+    },
+
+    /**
+     *  Stops keeping scan statistics and drops them.
+     * @param 	win	callback function
+     * @param 	fail	callback function if error
+     */
+    stopScanStats: function(win, fail) {
+        cordova.exec(win, fail, 'WifiWizard', 'stopScanStats', []);
+    },
+
+    /**
+     *  Gets the RSSI statistics per BSSID, strongest mean first.
+     * @param   options optional json object: bssids, ssidPrefix, minSeen, limit
+     * @param 	win	callback function that receives {scans, window, stats}
+     * @param 	fail	callback function if error
+     */
+    getScanStats: function(options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'getScanStats', [options]);
+    },
+
+    /**
+     *  Runs several actions one after the other in a single call.
+     * @param   steps   array of {action, args}, args being the array the native
+     *                  action takes (SSIDs in quotes)
+     * @param   options optional json object: stopOnError (default true)
+     * @param 	win	callback function that receives one {action, ok, result or error} per step
+     * @param 	fail	callback function if a step cannot be run in a pipeline
+     */
+    pipeline: function(steps, options, win, fail) {
+        if (typeof options === 'function') {
+            fail = win;
+            win = options;
+            options = {};
+        }
+        cordova.exec(win, fail, 'WifiWizard', 'pipeline', [steps, options || {}]);
     }
 };
 